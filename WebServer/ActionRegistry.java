@@ -0,0 +1,57 @@
+package com.example;
+
+//data structures for the registry and the accounting
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Interface for the handler of one action
+interface ActionHandler {
+    void handle(RequestContext request);
+}
+
+//Class for looking up the handler of an action in one step instead of comparing the action against every one we know.
+//Every TaskThread has its own registry, the time each handler takes is counted per action for the whole server
+final class ActionRegistry {
+    private static final ConcurrentHashMap<String, ActionStats> stats = new ConcurrentHashMap<>();
+    private HashMap<String, Registered> handlers = new HashMap<>();
+
+    //Class for a handler together with the accounting of its action
+    private static final class Registered {
+        final ActionHandler handler;
+        final ActionStats stats;
+
+        Registered(ActionHandler handler, ActionStats stats) {
+            this.handler = handler;
+            this.stats = stats;
+        }
+    }
+
+    //registering an action again replaces its handler
+    public void register(String action, ActionHandler handler) {
+        handlers.put(action, new Registered(handler, stats.computeIfAbsent(action, a -> new ActionStats())));
+    }
+
+    //Runs the action's handler and counts it, returns false if there is no handler for the action
+    public boolean dispatch(String action, RequestContext request) {
+        Registered registered = handlers.get(action);
+        if (registered == null) {
+            return false;
+        }
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            registered.handler.handle(request);
+            failed = false;
+        } finally {
+            registered.stats.record(System.nanoTime() - started, failed);
+        }
+        return true;
+    }
+
+    //the accounting of every registered action so far, by action
+    public static Map<String, ActionStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+}
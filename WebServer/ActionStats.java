@@ -0,0 +1,45 @@
+package com.example;
+
+//data structures for the registry and the accounting
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Class for the calls and time spent in one action's handler, added to by every TaskThread
+final class ActionStats {
+    private LongAdder invocations = new LongAdder();
+    private LongAdder failures = new LongAdder();
+    private LongAdder totalNanos = new LongAdder();
+    private AtomicLong maxNanos = new AtomicLong();
+    //how the handler times are spread, for the percentiles in the stats
+    private ConcurrentHistogram latency = new ConcurrentHistogram();
+
+    void record(long nanos, boolean failed) {
+        invocations.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        latency.recordNanos(nanos);
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public ConcurrentHistogram getLatency() {
+        return latency;
+    }
+}
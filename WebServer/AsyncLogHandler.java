@@ -0,0 +1,184 @@
+package com.example;
+
+//data structures for the ring buffer
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+//logging packages
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+//Class for the handler between the threads that log and the handlers that write, i.e. the console handler.
+//Logging a record only puts it into a bounded ring buffer, one appender thread takes the records out and hands them
+//to the real handlers, so formatting and writing to the console never happens on a task thread or a connection's
+//thread. When the ring is full the record is dropped and counted instead of holding up the thread that logged it,
+//the appender reports how many were dropped once it catches up
+final class AsyncLogHandler extends Handler {
+    private final Handler[] targets;
+    //the ring, every slot has a sequence number telling whether it is free for the lap a producer is on or holds a
+    //record for the lap the appender is on, so producers only contend on the tail and never on a lock
+    private final AtomicReferenceArray<LogRecord> records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    //only the appender moves the head
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread appender;
+    private volatile boolean appenderParked;
+    private volatile boolean closed;
+
+    //capacity is rounded up to a power of two
+    public AsyncLogHandler(Handler[] targets, int capacity) {
+        this.targets = targets;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.records = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.appender = new Thread(this::append, "log-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    //Puts an async handler in front of the root logger's handlers, and sets the level for all of them
+    public static AsyncLogHandler install(Level level, int capacity) {
+        Logger root = Logger.getLogger("");
+        Handler[] targets = root.getHandlers();
+        for (Handler target : targets) {
+            root.removeHandler(target);
+            target.setLevel(level);
+        }
+        AsyncLogHandler handler = new AsyncLogHandler(targets, capacity);
+        handler.setLevel(level);
+        root.addHandler(handler);
+        root.setLevel(level);
+        return handler;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        //the caller is only known on the thread that logged, the formatter asks for it later on the appender
+        record.getSourceClassName();
+        if (!offer(record)) {
+            dropped.increment();
+            return;
+        }
+        if (appenderParked) {
+            LockSupport.unpark(appender);
+        }
+    }
+
+    //Writes out everything still in the ring, on the calling thread
+    @Override
+    public void flush() {
+        drain();
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    //Called when the LogManager shuts down, nothing logged before that is lost
+    @Override
+    public void close() {
+        closed = true;
+        appender.interrupt();
+        try {
+            appender.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+
+    //records waiting for the appender, and records dropped because the ring was full
+    public int getQueued() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private boolean offer(LogRecord record) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence < position) {
+                return false;//the appender has not freed this slot yet, the ring is full
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                records.set(slot, record);
+                sequences.set(slot, position + 1);
+                return true;
+            }
+            //another producer took the slot, try the next one
+        }
+    }
+
+    //only called by the appender, or by flush once the appender is stopped
+    private synchronized LogRecord poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        LogRecord record = records.get(slot);
+        records.set(slot, null);
+        //free for the producers on the next lap
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return record;
+    }
+
+    private synchronized void drain() {
+        LogRecord record;
+        while ((record = poll()) != null) {
+            for (Handler target : targets) {
+                target.publish(record);
+            }
+        }
+    }
+
+    private void append() {
+        long reported = 0;
+        while (!closed) {
+            drain();
+            long lost = dropped.sum();
+            if (lost > reported) {
+                //straight to the targets, through the ring it could be dropped as well
+                LogRecord warning = new LogRecord(Level.WARNING, (lost - reported) + " log records dropped, the log ring was full");
+                warning.setLoggerName(AsyncLogHandler.class.getName());
+                warning.setSourceClassName(AsyncLogHandler.class.getName());
+                warning.setSourceMethodName("append");
+                for (Handler target : targets) {
+                    target.publish(warning);
+                }
+                reported = lost;
+            }
+            appenderParked = true;
+            //checked again after announcing it, a record offered in between would otherwise wait for the timeout
+            if (getQueued() == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            appenderParked = false;
+            if (Thread.interrupted()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example;
+
+//Class for the program constants, used for the messageboard and inherited private message board class and the client queues
+final class CONSTANTS {
+    //messages are stored in segments of 2^MESSAGE_SEGMENT_BITS
+    public final static int MESSAGE_SEGMENT_BITS = 12;
+    //a new journal segment file is started once the current one is this big
+    public final static long JOURNAL_SEGMENT_BYTES = 64L * 1024 * 1024;
+    //how many of the newest messages of a board keep their body on the heap when there is a journal
+    public final static int HOT_MESSAGES = 1024;
+    //messages in one page of getMessages / getGroupMessages when the client does not ask for a size, and the most it can ask for
+    public final static int DEFAULT_PAGE_SIZE = 20;
+    public final static int MAX_PAGE_SIZE = 100;
+    //the biggest request a client can send, anything longer is skipped up to the next newline
+    public final static int MAX_REQUEST_BYTES = 1 << 20;
+    //frames a client can have waiting to be written before new ones are dropped
+    public final static int MAX_OUTBOUND_FRAMES = 1024;
+    //a client with this many frames waiting is a slow consumer until it is back down to the low water mark
+    public final static int OUTBOUND_HIGH_WATER = 768;
+    public final static int OUTBOUND_LOW_WATER = 256;
+    //requests a client can make per second, and how many it can make at once after being quiet
+    public final static int CLIENT_RATE = 100;
+    public final static int CLIENT_BURST = 200;
+    //requests waiting for the dispatcher, for one client and for all of them, before new ones are refused
+    public final static int MAX_QUEUED_PER_CLIENT = 256;
+    public final static int MAX_QUEUED_TASKS = 10000;
+    //the retry-after sent with a refusal because the queue is full rather than because the client is over its rate
+    public final static long INGRESS_FULL_RETRY_MILLIS = 100;
+    //tasks the dispatcher hands to each worker before it waits for some of them to finish, the rest wait their turn
+    public final static int MAX_DISPATCHED_PER_WORKER = 64;
+    //log records waiting for the appender thread before new ones are dropped
+    public final static int LOG_RING_SIZE = 8192;
+    //at INFO, one in this many requests and responses is logged with its whole json
+    public final static int LOG_SAMPLE_EVERY = 100;
+    //seconds a dropped session can be resumed with its token, and the frames it can miss meanwhile before the oldest go
+    public final static int RESUME_GRACE_SECONDS = 30;
+    public final static int MAX_MISSED_FRAMES = 512;
+}
@@ -50,6 +50,11 @@ class Client:
         self.host = host
         self.port = port
         self.clientSocket = None
+        # bytes received but not yet cut into frames, and how the server currently delimits its frames
+        self.received = b""
+        self.framing = "newline"
+        # the token the server gave us to resume the session if the connection drops
+        self.resumeToken = None
 
     def connect(self):
         """ Connects to the server. """
@@ -60,6 +65,10 @@ class Client:
             self.clientSocket = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
             self.clientSocket.connect((self.host, self.port))
             print(f"Connected to {self.host} on port {self.port}")
+            # Ask for length prefixed frames, the server switches right after its affirm
+            self.received = b""
+            self.framing = "newline"
+            self.send_message(buildJSON(["type", "clientRequest", "action", "setFraming", "framing", "length"]))
         except Exception as e:
             print(f"Connection failed: {e}")
             self.clientSocket = None
@@ -110,10 +119,39 @@ class Client:
                 self.send_message(message)
             else:
                 print("ERROR: message command takes 1 parameter only: messageID")
+        elif command == "messages":
+            if len(parsedComms)==1:
+                message = buildJSON(["type", "clientRequest", "action", "getMessages"])
+                self.send_message(message)
+            elif len(parsedComms)==2:
+                message = buildJSON(["type", "clientRequest", "action", "getMessages", "cursor", int(parsedComms[1])])
+                self.send_message(message)
+            else:
+                print("ERROR: messages command takes at most 1 parameter: cursor")
+        elif command == "search":
+            if len(parsedComms)>=2:
+                message = buildJSON(["type", "clientRequest", "action", "search", "query", " ".join(parsedComms[1:])])
+                self.send_message(message)
+            else:
+                print("ERROR: search command needs at least one word to search for")
         elif command == "users":
             #retrieve list of users
             message = buildJSON(["type", "clientRequest", "action", "getUsers"])
             self.send_message(message)
+        elif command == "resume":
+            #take the session over on a new connection after the old one dropped
+            token = parsedComms[1] if len(parsedComms)==2 else self.resumeToken
+            if token:
+                self.close()
+                self.connect()
+                message = buildJSON(["type", "clientRequest", "action", "resume", "token", token])
+                self.send_message(message)
+            else:
+                print("ERROR: resume needs the resume-token of a session that joined")
+        elif command == "stats":
+            #retrieve the server's metrics, only answered on the server's machine
+            message = buildJSON(["type", "clientRequest", "action", "stats"])
+            self.send_message(message)
         elif command == "groups":
             #retrieve list of groups
             message = buildJSON(["type", "clientRequest", "action", "getGroups"])
@@ -147,6 +185,21 @@ class Client:
                 self.send_message(message)
             else:
                 print("ERROR: groupmessage command needs to have a groupID and messageID specified")
+        elif command == "groupmessages":
+            if len(parsedComms)==2:
+                message = buildJSON(["type", "clientRequest", "action", "getGroupMessages", "groupID", int(parsedComms[1])])
+                self.send_message(message)
+            elif len(parsedComms)==3:
+                message = buildJSON(["type", "clientRequest", "action", "getGroupMessages", "groupID", int(parsedComms[1]), "cursor", int(parsedComms[2])])
+                self.send_message(message)
+            else:
+                print("ERROR: groupmessages command needs to have a groupID specified, and optionally a cursor")
+        elif command == "groupsearch":
+            if len(parsedComms)>=3:
+                message = buildJSON(["type", "clientRequest", "action", "search", "groupID", int(parsedComms[1]), "query", " ".join(parsedComms[2:])])
+                self.send_message(message)
+            else:
+                print("ERROR: groupsearch command needs to have a groupID and at least one word specified")
         elif command == "groupleave":
             if len(parsedComms)==2:
                 message = buildJSON(["type", "clientRequest", "action", "groupLeave", "groupID", int(parsedComms[1])])
@@ -167,50 +220,64 @@ class Client:
         return True
 
     def receive_response(self):
-        """Receive the server's response, handling timeouts."""
-        response = ""
+        """Receive whatever the server sent and return the complete JSON documents in it."""
         try:
-            response = self.clientSocket.recv(4096).decode("utf-8")
-            if not response:
-                return
+            data = self.clientSocket.recv(65536)
+            if not data:
+                return []
+            self.received += data
         except socket.timeout:
             print("Timeout reached while receiving data.")
         except Exception as e:
             print(f"Error receiving response: {e}")
-        print(response)
-        return response.strip()  # Strip any trailing whitespace or newlines
-    
-    def format_response(self, response):
-        """Formats the response to show to the user."""
+        return self.cut_frames()
 
-        #Handle if response is multiple jsons
-        multiples = []
-        closed = 0
-        flag = 0
-        content = ""
-        for ch in response:
-            content += ch
-            if ch == "{":
-                closed += 1
-                flag = True
-            elif ch == "}":
-                closed -= 1
-        
-            # When a complete JSON object is found
-            if closed == 0 and flag:
+    def cut_frames(self):
+        """Cuts every complete frame out of the received bytes, a partial frame waits for the next read."""
+        documents = []
+        position = 0
+        while True:
+            if self.framing == "length":
+                if len(self.received) - position < 4:
+                    break
+                length = int.from_bytes(self.received[position:position + 4], "big")
+                if len(self.received) - position - 4 < length:
+                    break
+                frame = self.received[position + 4:position + 4 + length]
+                position += 4 + length
+            else:
+                end = self.received.find(b"\n", position)
+                if end < 0:
+                    break
+                frame = self.received[position:end]
+                position = end + 1
+            document = frame.decode("utf-8")
+            documents.append(document)
+            # The affirm to setFraming is the last frame in the old framing
+            if '"setFraming"' in document:
                 try:
-                    multiples.append(json.loads(content))
-                    content = ""
-                    flag = False
-                except json.JSONDecodeError:
-                    print(f"Error: Invalid JSON detected in fragment: {content}")
-                    content = ""
-                    flag = False
-                    return
-        
+                    parsed = json.loads(document)
+                    if parsed.get("type") == "ServerAffirm":
+                        self.framing = parsed["receivedData"]["framing"]
+                except (json.JSONDecodeError, KeyError):
+                    pass
+        self.received = self.received[position:]
+        return documents
+
+    def format_response(self, response):
+        """Formats the responses to show to the user, response is a list of JSON documents."""
+        multiples = []
+        for document in response or []:
+            try:
+                multiples.append(json.loads(document))
+            except json.JSONDecodeError:
+                print(f"Error: Invalid JSON detected in frame: {document}")
+
         #Now, if we have multiple jsons, format all of them
         returnList = []
         for validJson in multiples:
+            if 'resume-token' in validJson:
+                self.resumeToken = validJson['resume-token']
             data = self.format_response_data(validJson)
             response_type = validJson.get('type', 'Unknown')
             
@@ -246,6 +313,21 @@ class Client:
                 f"{response.get('data', 'No message data')}\n"
             )
             return message
+        elif data_type == "messages":
+            page = f"Group : {response.get('group', 'Unknown Group')}\n"
+            for item in response.get('data', []):
+                page += (
+                    f"Message-ID : {item.get('message-id', 'Unknown ID')}\n"
+                    f"Message-Subject : {item.get('message-subject', 'No Subject')}\n"
+                    f"Post-Date : {item.get('post-date', 'Unknown Date')}\n"
+                    f"Sender : {item.get('sender', 'Unknown Sender')}\n"
+                    f"{item.get('data', 'No message data')}\n"
+                )
+            if 'next-cursor' in response:
+                page += f"Older messages: use cursor {response['next-cursor']}\n"
+            return page
+        elif data_type == "stats":
+            return "Server Stats\n" + json.dumps(response.get('data', {}), indent=2)
         else:
             return "Unknown data type"
 
@@ -0,0 +1,40 @@
+package com.example;
+
+//data structures for the counters
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//json packages
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObjectBuilder;
+
+//Class for a histogram of durations that every thread can record into at once. Recording is a few atomic adds
+//into a fixed array, nothing is allocated, so it can sit on the hot path. The buckets are the load generator's,
+//from LogLinearBuckets: exact below 128 microseconds, above that within 1/64 of the value
+final class ConcurrentHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LogLinearBuckets.BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.getAndIncrement(LogLinearBuckets.index(micros));
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    //count, percentiles and max in microseconds, read while the other threads keep recording, so it is close but not exact
+    public JsonObjectBuilder toJson(JsonBuilderFactory builders) {
+        long[] copy = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long highest = max.get();
+        return builders.createObjectBuilder()
+                .add("count", count)
+                .add("p50", LogLinearBuckets.percentile(copy, count, highest, 0.5))
+                .add("p99", LogLinearBuckets.percentile(copy, count, highest, 0.99))
+                .add("p999", LogLinearBuckets.percentile(copy, count, highest, 0.999))
+                .add("max", highest);
+    }
+}
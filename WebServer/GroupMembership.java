@@ -0,0 +1,57 @@
+package com.example;
+
+//data structures for the index
+import java.util.Collections;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Class for the index of which connected clients are in which private group, kept both ways so a group post only
+//visits the group's members and a leaving client only visits its own groups, clients are keyed by session id
+final class GroupMembership {
+    private static final LongConcurrentMap<Boolean> NO_MEMBERS = new LongConcurrentMap<>();
+    //the members of a group are the keys, the values are only there to make it a set
+    private ConcurrentHashMap<Integer, LongConcurrentMap<Boolean>> membersByGroup = new ConcurrentHashMap<>();
+    private LongConcurrentMap<Set<Integer>> groupsByClient = new LongConcurrentMap<>();
+
+    public void join(long sessionId, int groupID) {
+        membersByGroup.computeIfAbsent(groupID, g -> new LongConcurrentMap<>()).put(sessionId, Boolean.TRUE);
+        groupsByClient.computeIfAbsent(sessionId, c -> ConcurrentHashMap.newKeySet()).add(groupID);
+    }
+
+    public void leave(long sessionId, int groupID) {
+        LongConcurrentMap<Boolean> members = membersByGroup.get(groupID);
+        if (members != null) {
+            members.remove(sessionId);
+        }
+        Set<Integer> groups = groupsByClient.get(sessionId);
+        if (groups != null) {
+            groups.remove(groupID);
+        }
+    }
+
+    //takes the client out of every group it is in and returns those groups
+    public Set<Integer> leaveAll(long sessionId) {
+        Set<Integer> groups = groupsByClient.remove(sessionId);
+        if (groups == null) {
+            return Collections.emptySet();
+        }
+        for (int groupID : groups) {
+            LongConcurrentMap<Boolean> members = membersByGroup.get(groupID);
+            if (members != null) {
+                members.remove(sessionId);
+            }
+        }
+        return groups;
+    }
+
+    //the session ids of the clients in the group, safe to iterate while others join and leave
+    public PrimitiveIterator.OfLong getMembers(int groupID) {
+        return membersByGroup.getOrDefault(groupID, NO_MEMBERS).keys();
+    }
+
+    public Set<Integer> getGroups(long sessionId) {
+        Set<Integer> groups = groupsByClient.get(sessionId);
+        return groups == null ? Collections.emptySet() : groups;
+    }
+}
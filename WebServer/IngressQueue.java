@@ -0,0 +1,192 @@
+package com.example;
+
+//data structures for the per client queues
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//logging package
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+//Class for the bounded queue between the connections and the dispatcher, replaces the unbounded task queue.
+//Every client has a queue of its own and a token bucket: a request costs a token, the bucket refills at the client
+//rate up to the burst, and a request that finds it empty, or its client's queue or the whole queue full, is not
+//queued at all, the client gets a ServerDeny with a retry-after hint instead. The dispatcher takes one task per
+//client in turn, so a client with a long queue cannot hold back the ones behind it.
+//The welcome and remove tasks the server makes itself are never refused
+final class IngressQueue {
+    private static final Logger logger = Logger.getLogger(IngressQueue.class.getName());
+    //a flooding client can be refused thousands of times a second, so the json provider is only looked up once
+    private static final JsonBuilderFactory builders = Json.createBuilderFactory(null);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private LongConcurrentMap<Lane> lanes = new LongConcurrentMap<>();
+    //the clients with queued tasks, in the order they are served
+    private ArrayDeque<Lane> ready = new ArrayDeque<>();
+    private int queued;
+    private double tokensPerNano;
+    private int burst;
+
+    //Class for the queue and the token bucket of one client
+    private static final class Lane {
+        final long sessionId;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        double tokens;
+        long refilled;
+        //set once the remove task is queued, the lane goes away when it is taken
+        boolean closing;
+
+        Lane(long sessionId, int burst) {
+            this.sessionId = sessionId;
+            this.tokens = burst;
+            this.refilled = System.nanoTime();
+        }
+    }
+
+    //rate is in requests per second, 0 turns the token buckets off
+    public IngressQueue(int rate, int burst) {
+        this.tokensPerNano = rate / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+    }
+
+    //Queues a request of a client, or sends the client a ServerDeny if it is over its rate or the queue is full
+    public boolean submit(Task task) {
+        long retryAfter = offer(task);
+        if (retryAfter == 0) {
+            return true;
+        }
+        ServerMetrics.throttled.increment();
+        deny(task, retryAfter);
+        return false;
+    }
+
+    //Queues a task the server made itself, never refused
+    public void put(Task task) {
+        lock.lock();
+        try {
+            add(lane(task.getSessionId()), task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Queues the last task of a client, its lane is dropped once the task is taken
+    public void putLast(Task task) {
+        lock.lock();
+        try {
+            Lane lane = lane(task.getSessionId());
+            lane.closing = true;
+            add(lane, task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //The next task, one from each client in turn, waits if there is none
+    public Task take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (ready.isEmpty()) {
+                notEmpty.await();
+            }
+            Lane lane = ready.poll();
+            Task task = lane.tasks.poll();
+            queued--;
+            ServerMetrics.queueWait.recordNanos(System.nanoTime() - task.getQueuedAt());
+            if (!lane.tasks.isEmpty()) {
+                ready.add(lane);
+            } else if (lane.closing) {
+                lanes.remove(lane.sessionId);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //0 if the task was queued, otherwise how many milliseconds the client should wait before trying again
+    private long offer(Task task) {
+        lock.lock();
+        try {
+            Lane lane = lane(task.getSessionId());
+            if (queued >= CONSTANTS.MAX_QUEUED_TASKS) {
+                return CONSTANTS.INGRESS_FULL_RETRY_MILLIS;
+            }
+            if (lane.tasks.size() >= CONSTANTS.MAX_QUEUED_PER_CLIENT) {
+                return CONSTANTS.INGRESS_FULL_RETRY_MILLIS;
+            }
+            if (tokensPerNano > 0) {
+                long now = System.nanoTime();
+                lane.tokens = Math.min(burst, lane.tokens + (now - lane.refilled) * tokensPerNano);
+                lane.refilled = now;
+                if (lane.tokens < 1) {
+                    //until the bucket has a whole token again
+                    long nanos = (long) Math.ceil((1 - lane.tokens) / tokensPerNano);
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos) + 1);
+                }
+                lane.tokens--;
+            }
+            add(lane, task);
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //only called with the lock held
+    private Lane lane(long sessionId) {
+        return lanes.computeIfAbsent(sessionId, id -> new Lane(id, burst));
+    }
+
+    //only called with the lock held
+    private void add(Lane lane, Task task) {
+        if (lane.tasks.isEmpty()) {
+            ready.add(lane);
+        }
+        task.setQueuedAt(System.nanoTime());
+        lane.tasks.add(task);
+        queued++;
+        ServerMetrics.queued(queued);
+        notEmpty.signal();
+    }
+
+    //the deny goes straight to the client's outbound queue, the request never reaches a worker
+    private static void deny(Task task, long retryAfter) {
+        Profile profile = Server.getUserProfile(task.getSessionId());
+        if (profile == null) {
+            return;
+        }
+        JsonObject request = task.getJsonObject();
+        JsonObjectBuilder response = builders.createObjectBuilder()
+                .add("type", "ServerDeny")
+                .add("data-type", "text")
+                .add("data", "Too many requests, try again in " + retryAfter + " ms")
+                .add("retry-after", retryAfter)
+                .add("receivedData", request);
+        if (request.containsKey("requestID")) {
+            response.add("requestID", request.get("requestID"));
+        }
+        profile.send(response.build().toString());
+        //a flood is refused many times a second, the stats count them all
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("[Client " + task.getSessionId() + "] Request throttled, retry after " + retryAfter + " ms.");
+        }
+    }
+}
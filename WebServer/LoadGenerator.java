@@ -0,0 +1,620 @@
+package com.example;
+
+//All packages needed for the non-blocking client connections
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+//data structures for the sessions and the results
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+//Class for the startup options of the load generator, given on the command line as --option=value like the server's
+final class LoadOptions {
+    String host = "localhost";
+    int port = 6789;
+    //concurrent client sessions, and the selector threads they are spread over
+    int clients = 1000;
+    int threads = Runtime.getRuntime().availableProcessors();
+    //seconds of load after the last session connected, and seconds over which the sessions connect
+    int duration = 30;
+    int rampUp = 5;
+    //average milliseconds a session waits between getting a response and sending its next request
+    int think = 1000;
+    //relative weights of what a joined session does next, a leave is followed by joining again
+    Map<String, Integer> mix = new LinkedHashMap<>();
+    long seed = 4065;
+
+    LoadOptions() {
+        mix.put("post", 40);
+        mix.put("grouppost", 20);
+        mix.put("get", 40);
+        mix.put("leave", 0);
+    }
+
+    public static LoadOptions parse(String[] argv) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : argv) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options must be given as --option=value, got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if ("host".equals(key)) {
+                options.host = value;
+            } else if ("port".equals(key)) {
+                options.port = Integer.parseInt(value);
+            } else if ("clients".equals(key)) {
+                options.clients = Math.max(1, Integer.parseInt(value));
+            } else if ("threads".equals(key)) {
+                options.threads = Math.max(1, Integer.parseInt(value));
+            } else if ("duration".equals(key)) {
+                options.duration = Math.max(1, Integer.parseInt(value));
+            } else if ("ramp-up".equals(key)) {
+                options.rampUp = Math.max(0, Integer.parseInt(value));
+            } else if ("think".equals(key)) {
+                options.think = Math.max(0, Integer.parseInt(value));
+            } else if ("seed".equals(key)) {
+                options.seed = Long.parseLong(value);
+            } else if ("mix".equals(key)) {
+                //e.g. post=50,grouppost=10,get=40,leave=5, anything left out is not done
+                for (String action : options.mix.keySet()) {
+                    options.mix.put(action, 0);
+                }
+                for (String part : value.split(",")) {
+                    String[] weight = part.split("=");
+                    if (weight.length != 2 || !options.mix.containsKey(weight[0])) {
+                        throw new IllegalArgumentException("Unknown mix entry " + part + ", expected post, grouppost, get or leave=weight");
+                    }
+                    options.mix.put(weight[0], Math.max(0, Integer.parseInt(weight[1])));
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option --" + key);
+            }
+        }
+        if (options.mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("The mix needs at least one action with a weight");
+        }
+        return options;
+    }
+}
+
+//Class for a latency histogram in microseconds, the buckets of LogLinearBuckets are exact below 128 and about 1.5% wide above,
+//so recording is an array increment and percentiles come out of the bucket counts
+final class LatencyHistogram {
+    private long[] counts = new long[LogLinearBuckets.BUCKETS];
+    private long count;
+    private long max;
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[LogLinearBuckets.index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    //the value at or below which the fraction of recorded values is, e.g. 0.99
+    public long percentile(double fraction) {
+        return LogLinearBuckets.percentile(counts, count, max, fraction);
+    }
+}
+
+//Class for one simulated client, a closed loop: it sends a request, waits for the response with its requestID,
+//thinks for a while and sends the next one. Only ever touched by the thread that owns it
+final class LoadSession {
+    static final int WAITING_TO_CONNECT = 0;
+    static final int CONNECTING = 1;
+    static final int JOINING = 2;
+    static final int JOINING_GROUP = 3;
+    static final int RUNNING = 4;
+    static final int LEAVING = 5;
+    static final int DONE = 6;
+
+    final int id;
+    final String username;
+    final int groupID;
+    final Random random;
+    SocketChannel channel;
+    SelectionKey key;
+    final RequestDecoder decoder = new RequestDecoder();
+    RequestDecoder.Sink responses;
+    //what still has to be written, the requests are small so this is rarely more than one
+    final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+    int state = WAITING_TO_CONNECT;
+    //when the session does its next step, in System.nanoTime
+    long dueAt;
+    //the request in flight, -1 when there is none
+    long requestID = -1;
+    String action;
+    long sentAt;
+    long nextRequestID;
+    //the newest public message ID seen, getMessage asks for one of the messages up to it
+    int newestMessageID = -1;
+
+    LoadSession(int id, long seed) {
+        this.id = id;
+        this.username = "load" + id;
+        this.groupID = id % 5;
+        this.random = new Random(seed + id);
+    }
+}
+
+//Class for the load generator, drives thousands of sessions against a running server with the same json protocol
+//the python client speaks and reports throughput and latency percentiles. Run it next to the server:
+//java -cp [classpath] com.example.LoadGenerator --clients=2000 --duration=60 --mix=post=30,get=60,leave=10
+public final class LoadGenerator {
+    private static final int BODY_REPEAT = 4;
+    //every request is built with it, looking the json provider up for each one would cost more than the request
+    private static final JsonBuilderFactory builders = Json.createBuilderFactory(null);
+
+    private LoadOptions options;
+    private volatile boolean stopping;
+    private LongAdder connected = new LongAdder();
+    private LongAdder failed = new LongAdder();
+    private LongAdder requests = new LongAdder();
+    private LongAdder affirmed = new LongAdder();
+    private LongAdder denied = new LongAdder();
+    private LongAdder throttled = new LongAdder();
+    private LongAdder notifications = new LongAdder();
+
+    public static void main(String[] argv) throws Exception {
+        new LoadGenerator(LoadOptions.parse(argv)).run();
+    }
+
+    LoadGenerator(LoadOptions options) {
+        this.options = options;
+    }
+
+    void run() throws IOException, InterruptedException {
+        System.out.println("Load test against " + options.host + ":" + options.port + ", " + options.clients + " sessions on "
+                + options.threads + " threads, " + options.rampUp + " s ramp up then " + options.duration + " s, mix " + options.mix);
+        List<Driver> drivers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < options.threads; t++) {
+            drivers.add(new Driver());
+        }
+        //sessions connect evenly over the ramp up, spread round robin over the threads
+        for (int i = 0; i < options.clients; i++) {
+            LoadSession session = new LoadSession(i, options.seed);
+            session.dueAt = start + TimeUnit.SECONDS.toNanos(options.rampUp) * i / options.clients;
+            drivers.get(i % options.threads).timers.add(session);
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < drivers.size(); t++) {
+            Thread thread = new Thread(drivers.get(t), "load-" + t);
+            //a session the server never answers must not keep the generator from exiting
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        //a progress line every 5 seconds, the rates are only taken once every session had the chance to connect
+        long measuredFrom = start + TimeUnit.SECONDS.toNanos(options.rampUp);
+        long end = measuredFrom + TimeUnit.SECONDS.toNanos(options.duration);
+        long requestsAtRampUp = 0;
+        long notificationsAtRampUp = 0;
+        boolean rampedUp = options.rampUp == 0;
+        long lastRequests = 0;
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            long until = Math.min(now + TimeUnit.SECONDS.toNanos(5), rampedUp ? end : measuredFrom);
+            Thread.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(until - now)));
+            long total = requests.sum();
+            if (!rampedUp && System.nanoTime() >= measuredFrom) {
+                rampedUp = true;
+                requestsAtRampUp = total;
+                notificationsAtRampUp = notifications.sum();
+            }
+            System.out.println(String.format("%6.1f s  sessions %d  requests %d (+%d)  affirmed %d  denied %d  notifications %d",
+                    (System.nanoTime() - start) / 1e9, connected.sum(), total, total - lastRequests, affirmed.sum(), denied.sum(), notifications.sum()));
+            lastRequests = total;
+        }
+        double seconds = (System.nanoTime() - measuredFrom) / 1e9;
+        long measuredRequests = requests.sum() - requestsAtRampUp;
+        long measuredNotifications = notifications.sum() - notificationsAtRampUp;
+
+        //every session leaves and hangs up, the ones that do not manage within a few seconds are closed
+        stopping = true;
+        for (Driver driver : drivers) {
+            driver.selector.wakeup();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        Map<String, LatencyHistogram> byAction = new LinkedHashMap<>();
+        LatencyHistogram allRequests = new LatencyHistogram();
+        LatencyHistogram postToNotification = new LatencyHistogram();
+        for (Driver driver : drivers) {
+            for (Map.Entry<String, LatencyHistogram> entry : driver.byAction.entrySet()) {
+                byAction.computeIfAbsent(entry.getKey(), a -> new LatencyHistogram()).add(entry.getValue());
+                allRequests.add(entry.getValue());
+            }
+            postToNotification.add(driver.postToNotification);
+        }
+        System.out.println();
+        System.out.println("sessions connected " + connected.sum() + ", failed " + failed.sum());
+        System.out.println(String.format("after ramp up: %d requests in %.1f s, %.1f/s, %d notifications received, %.1f/s",
+                measuredRequests, seconds, measuredRequests / seconds, measuredNotifications, measuredNotifications / seconds));
+        System.out.println("all responses: affirmed " + affirmed.sum() + ", denied " + denied.sum() + " (throttled " + throttled.sum() + ")");
+        System.out.println();
+        System.out.println(String.format("%-28s %10s %10s %10s %10s %10s", "latency (ms)", "count", "p50", "p99", "p999", "max"));
+        for (Map.Entry<String, LatencyHistogram> entry : byAction.entrySet()) {
+            printLatency("request " + entry.getKey(), entry.getValue());
+        }
+        printLatency("request, all", allRequests);
+        printLatency("post to notification", postToNotification);
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.println(String.format("%-28s %10d %10.2f %10.2f %10.2f %10.2f", name, histogram.getCount(),
+                histogram.percentile(0.50) / 1000.0, histogram.percentile(0.99) / 1000.0,
+                histogram.percentile(0.999) / 1000.0, histogram.getMax() / 1000.0));
+    }
+
+    //Class for one selector thread and the sessions it owns, the timers are the sessions waiting for their next step
+    private final class Driver implements Runnable {
+        final Selector selector;
+        final PriorityQueue<LoadSession> timers = new PriorityQueue<>((a, b) -> Long.compare(a.dueAt, b.dueAt));
+        final List<LoadSession> sessions = new ArrayList<>();
+        final Map<String, LatencyHistogram> byAction = new LinkedHashMap<>();
+        final LatencyHistogram postToNotification = new LatencyHistogram();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        boolean stopped;
+
+        Driver() throws IOException {
+            selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!finished()) {
+                    if (stopping && !stopped) {
+                        stopAll();
+                    }
+                    long now = System.nanoTime();
+                    while (!timers.isEmpty() && timers.peek().dueAt <= now) {
+                        step(timers.poll());
+                    }
+                    long wait = timers.isEmpty() ? 100 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(timers.peek().dueAt - now));
+                    selector.select(stopping ? Math.min(wait, 100) : wait);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        handle((LoadSession) key.attachment(), key);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                System.err.println("Load thread stopped: " + e.getMessage());
+            } finally {
+                for (LoadSession session : sessions) {
+                    close(session);
+                }
+            }
+        }
+
+        private boolean finished() {
+            if (!stopping) {
+                return false;
+            }
+            for (LoadSession session : sessions) {
+                if (session.state != LoadSession.DONE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //idle sessions leave right away, busy ones once their response is in, the rest are never connected
+        private void stopAll() {
+            stopped = true;
+            for (LoadSession session : timers) {
+                if (session.state == LoadSession.WAITING_TO_CONNECT) {
+                    session.state = LoadSession.DONE;
+                }
+            }
+            timers.clear();
+            for (LoadSession session : sessions) {
+                if (session.state == LoadSession.DONE || session.state == LoadSession.CONNECTING || session.requestID >= 0) {
+                    continue;
+                }
+                if (session.state == LoadSession.JOINING) {
+                    close(session);//not on the board, between leaving and joining again
+                } else {
+                    leave(session);
+                }
+            }
+        }
+
+        //a session's timer went off: connect it, or send its next request
+        private void step(LoadSession session) {
+            if (session.state == LoadSession.WAITING_TO_CONNECT) {
+                connect(session);
+            } else if (session.state == LoadSession.RUNNING) {
+                next(session);
+            } else if (session.state == LoadSession.JOINING) {
+                //back after a leave, or throttled
+                send(session, "join", builders.createObjectBuilder().add("username", session.username));
+            } else if (session.state == LoadSession.JOINING_GROUP) {
+                send(session, "groupJoin", builders.createObjectBuilder().add("groupID", session.groupID));
+            }
+        }
+
+        private void connect(LoadSession session) {
+            try {
+                session.channel = SocketChannel.open();
+                session.channel.configureBlocking(false);
+                session.channel.connect(new InetSocketAddress(options.host, options.port));
+                session.key = session.channel.register(selector, SelectionKey.OP_CONNECT, session);
+                session.responses = new RequestDecoder.Sink() {
+                    @Override
+                    public void request(JsonObject response) {
+                        received(session, response);
+                    }
+
+                    @Override
+                    public void invalid(String input) {
+                        System.err.println("[" + session.username + "] Invalid response: " + input);
+                    }
+                };
+                session.state = LoadSession.CONNECTING;
+                sessions.add(session);
+            } catch (IOException e) {
+                failed.increment();
+                session.state = LoadSession.DONE;
+            }
+        }
+
+        private void handle(LoadSession session, SelectionKey key) {
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isConnectable()) {
+                    session.channel.finishConnect();
+                    connected.increment();
+                    key.interestOps(SelectionKey.OP_READ);
+                    session.state = LoadSession.JOINING;
+                    send(session, "join", builders.createObjectBuilder().add("username", session.username));
+                    return;
+                }
+                if (key.isWritable()) {
+                    flush(session);
+                }
+                if (key.isReadable()) {
+                    readBuffer.clear();
+                    int count = session.channel.read(readBuffer);
+                    if (count < 0) {
+                        close(session);
+                        return;
+                    }
+                    readBuffer.flip();
+                    session.decoder.feed(readBuffer);
+                    session.decoder.decode(session.responses);
+                }
+            } catch (IOException e) {
+                if (session.state == LoadSession.CONNECTING) {
+                    failed.increment();
+                }
+                close(session);
+            }
+        }
+
+        private void received(LoadSession session, JsonObject response) {
+            long now = System.nanoTime();
+            JsonValue requestID = response.get("requestID");
+            if (requestID instanceof JsonNumber && ((JsonNumber) requestID).longValue() == session.requestID) {
+                responded(session, response, now);
+                return;
+            }
+            //a new public message, its subject carries when it was posted
+            if (!"ServerNotification".equals(string(response, "type")) || !"message".equals(string(response, "data-type"))) {
+                return;
+            }
+            notifications.increment();
+            if ("Public".equals(string(response, "group")) && response.get("message-id") instanceof JsonNumber) {
+                session.newestMessageID = Math.max(session.newestMessageID, response.getInt("message-id"));
+            }
+            String subject = string(response, "message-subject");
+            if (subject != null && subject.startsWith("load ")) {
+                try {
+                    long postedAt = Long.parseLong(subject.substring(5));
+                    postToNotification.record(TimeUnit.NANOSECONDS.toMicros(now - postedAt));
+                } catch (NumberFormatException e) {
+                    //someone else's post that happens to start the same way
+                }
+            }
+        }
+
+        private void responded(LoadSession session, JsonObject response, long now) {
+            byAction.computeIfAbsent(session.action, a -> new LatencyHistogram()).record(TimeUnit.NANOSECONDS.toMicros(now - session.sentAt));
+            session.requestID = -1;
+            boolean affirm = "ServerAffirm".equals(string(response, "type"));
+            if (affirm) {
+                affirmed.increment();
+            } else {
+                denied.increment();
+                if (response.containsKey("retry-after")) {
+                    throttled.increment();
+                }
+            }
+            if (stopping) {
+                //a session that is on the board leaves before it hangs up
+                if (session.state == LoadSession.LEAVING || (session.state == LoadSession.JOINING && !affirm)) {
+                    close(session);
+                } else {
+                    leave(session);
+                }
+                return;
+            }
+            switch (session.state) {
+                case LoadSession.JOINING:
+                    if (!affirm && !response.containsKey("retry-after")) {
+                        //the username is taken, most likely by another load generator
+                        System.err.println("[" + session.username + "] Could not join: " + string(response, "data"));
+                        close(session);
+                        return;
+                    }
+                    if (affirm) {
+                        session.state = LoadSession.JOINING_GROUP;
+                        send(session, "groupJoin", builders.createObjectBuilder().add("groupID", session.groupID));
+                        return;
+                    }
+                    break;
+                case LoadSession.JOINING_GROUP:
+                    if (affirm || !response.containsKey("retry-after")) {
+                        session.state = LoadSession.RUNNING;
+                    }
+                    break;
+                case LoadSession.LEAVING:
+                    //churn, the session joins again after thinking
+                    session.state = LoadSession.JOINING;
+                    break;
+                default:
+                    break;
+            }
+            //think, a throttled request waits for as long as the server asked
+            long pause = thinkTime(session);
+            if (response.get("retry-after") instanceof JsonNumber) {
+                pause = Math.max(pause, TimeUnit.MILLISECONDS.toNanos(response.getJsonNumber("retry-after").longValue()));
+            }
+            session.dueAt = now + pause;
+            timers.add(session);
+        }
+
+        //the next request of a joined session, picked by the weights of the mix
+        private void next(LoadSession session) {
+            int total = 0;
+            for (int weight : options.mix.values()) {
+                total += weight;
+            }
+            int pick = session.random.nextInt(total);
+            String chosen = null;
+            for (Map.Entry<String, Integer> entry : options.mix.entrySet()) {
+                pick -= entry.getValue();
+                if (pick < 0) {
+                    chosen = entry.getKey();
+                    break;
+                }
+            }
+            long now = System.nanoTime();
+            String body = "load generator message from " + session.username + ". ";
+            switch (chosen) {
+                case "post":
+                    send(session, "postMessage", builders.createObjectBuilder()
+                            .add("messageSubject", "load " + now)
+                            .add("messageContent", body.repeat(BODY_REPEAT)));
+                    break;
+                case "grouppost":
+                    send(session, "groupPostMessage", builders.createObjectBuilder()
+                            .add("groupID", session.groupID)
+                            .add("messageSubject", "load " + now)
+                            .add("messageContent", body.repeat(BODY_REPEAT)));
+                    break;
+                case "get":
+                    int id = session.newestMessageID < 0 ? 0 : session.random.nextInt(session.newestMessageID + 1);
+                    send(session, "getMessage", builders.createObjectBuilder().add("messageID", id));
+                    break;
+                default:
+                    leave(session);
+                    break;
+            }
+        }
+
+        private void leave(LoadSession session) {
+            session.state = LoadSession.LEAVING;
+            send(session, "leave", builders.createObjectBuilder());
+        }
+
+        private void send(LoadSession session, String action, JsonObjectBuilder request) {
+            session.action = action;
+            session.requestID = session.nextRequestID++;
+            String json = request
+                    .add("type", "clientRequest")
+                    .add("action", action)
+                    .add("requestID", session.requestID)
+                    .build()
+                    .toString();
+            session.writes.add(ByteBuffer.wrap((json + "\n").getBytes(StandardCharsets.UTF_8)));
+            session.sentAt = System.nanoTime();
+            requests.increment();
+            try {
+                flush(session);
+            } catch (IOException e) {
+                close(session);
+            }
+        }
+
+        private void flush(LoadSession session) throws IOException {
+            while (!session.writes.isEmpty()) {
+                ByteBuffer buffer = session.writes.peek();
+                session.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                session.writes.poll();
+            }
+            session.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        //between half and one and a half times the think time, so the sessions do not move in lock step
+        private long thinkTime(LoadSession session) {
+            return TimeUnit.MILLISECONDS.toNanos(options.think) * (500 + session.random.nextInt(1001)) / 1000;
+        }
+
+        private void close(LoadSession session) {
+            session.state = LoadSession.DONE;
+            timers.remove(session);
+            if (session.channel == null) {
+                return;
+            }
+            try {
+                session.channel.close();
+            } catch (IOException e) {
+                //already gone
+            }
+        }
+    }
+
+    private static String string(JsonObject json, String key) {
+        JsonValue value = json.get(key);
+        return value instanceof JsonString ? ((JsonString) value).getString() : null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+//Class for the bucket math of the log linear histograms, the server's ConcurrentHistogram and the load generator's
+//LatencyHistogram. Values below SUB have a bucket each, above that a bucket is 1/64 of its values wide,
+//so a value read back from its bucket is within about 1.5% of what was recorded
+final class LogLinearBuckets {
+    private static final int SUB_BITS = 7;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int HALF = SUB / 2;
+    //enough buckets for microseconds of a bit over a day
+    static final int BUCKETS = SUB + 40 * HALF;
+
+    private LogLinearBuckets() {
+    }
+
+    //the bucket of a value, values past the last bucket go in it
+    static int index(long value) {
+        if (value < SUB) {
+            return (int) Math.max(0, value);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return Math.min(BUCKETS - 1, SUB + (shift - 1) * HALF + (int) ((value >> shift) - HALF));
+    }
+
+    //the highest value that goes in the bucket
+    static long highest(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = (index - SUB) / HALF + 1;
+        long lowest = (long) ((index - SUB) % HALF + HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    //the value at or below which the fraction of the counted values is, e.g. 0.99, never more than the max recorded
+    static long percentile(long[] counts, long count, long max, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highest(i));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example;
+
+//data structures for the tables
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongFunction;
+
+//Class for a concurrent map keyed by a primitive long, for the tables looked up on every request by session id.
+//A lookup never boxes the key and never takes a lock: the map is split into segments, each holding an open addressing
+//table that is never changed once it is published. A put or remove copies the segment's table under the segment's lock
+//and publishes the copy, which is cheap as connecting and disconnecting is rare next to looking a session up.
+//Iterating walks the tables as they were when each segment was reached, so it is safe while others add and remove.
+//The key 0 is reserved for empty slots, session ids start at 1
+final class LongConcurrentMap<V> {
+    private static final int SEGMENT_BITS = 5;
+    private static final long[] NO_KEYS = new long[2];
+    private static final Object[] NO_VALUES = new Object[2];
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    //Class for one published table, never written to after it is published
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int size;
+
+        Table(long[] keys, Object[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+    }
+
+    //Class for a segment, writers lock it, readers only read the volatile table
+    private static final class Segment {
+        volatile Table table = new Table(NO_KEYS, NO_VALUES, 0);
+    }
+
+    public LongConcurrentMap() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table table = segment(key).table;
+        int slot = find(table.keys, key);
+        return slot < 0 ? null : (V) table.values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(segment(key).table.keys, key) >= 0;
+    }
+
+    //returns the value the key had, null if it had none
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        checkKey(key);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = find(table.keys, key);
+            if (slot >= 0) {
+                Object[] values = table.values.clone();
+                values[slot] = value;
+                segment.table = new Table(table.keys, values, table.size);
+                return (V) table.values[slot];
+            }
+            segment.table = copyWith(table, key, value);
+            return null;
+        }
+    }
+
+    //returns the value the key already had and leaves it, otherwise adds the new value and returns null
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        checkKey(key);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = find(table.keys, key);
+            if (slot >= 0) {
+                return (V) table.values[slot];
+            }
+            segment.table = copyWith(table, key, value);
+            return null;
+        }
+    }
+
+    //the value of the key, made and added by the function if the key has none, the function runs at most once
+    public V computeIfAbsent(long key, LongFunction<V> function) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        checkKey(key);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            value = get(key);
+            if (value == null) {
+                value = function.apply(key);
+                segment.table = copyWith(segment.table, key, value);
+            }
+            return value;
+        }
+    }
+
+    //returns the value the key had, null if it had none
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = find(table.keys, key);
+            if (slot < 0) {
+                return null;
+            }
+            segment.table = copyWithout(table, key);
+            return (V) table.values[slot];
+        }
+    }
+
+    //only removes the key while it still has this value
+    public boolean remove(long key, V value) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            Table table = segment.table;
+            int slot = find(table.keys, key);
+            if (slot < 0 || table.values[slot] != value) {
+                return false;
+            }
+            segment.table = copyWithout(table, key);
+            return true;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.table.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public PrimitiveIterator.OfLong keys() {
+        return new Walk();
+    }
+
+    public Iterable<V> values() {
+        return () -> new Iterator<V>() {
+            private final Walk walk = new Walk();
+
+            @Override
+            public boolean hasNext() {
+                return walk.hasNext();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                walk.nextLong();
+                return (V) walk.value();
+            }
+        };
+    }
+
+    //Class for walking every slot of every segment, one table at a time
+    private final class Walk implements PrimitiveIterator.OfLong {
+        private int segment = -1;
+        private Table table = new Table(NO_KEYS, NO_VALUES, 0);
+        private int slot = -1;
+        private int current;
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                for (int i = slot + 1; i < table.keys.length; i++) {
+                    if (table.keys[i] != 0) {
+                        slot = i - 1;
+                        return true;
+                    }
+                }
+                if (segment + 1 >= segments.length) {
+                    slot = table.keys.length;
+                    return false;
+                }
+                table = segments[++segment].table;
+                slot = -1;
+            }
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = ++slot;
+            return table.keys[current];
+        }
+
+        Object value() {
+            return table.values[current];
+        }
+    }
+
+    private Segment segment(long key) {
+        return segments[(int) (spread(key) >>> (64 - SEGMENT_BITS))];
+    }
+
+    //session ids are handed out in order, so they are mixed before picking a segment and a slot
+    private static long spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static int find(long[] keys, long key) {
+        if (key == 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = (int) spread(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            if (keys[slot] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be a key");
+        }
+    }
+
+    //tables are kept at most half full, so a lookup ends at an empty slot soon
+    private static Table copyWith(Table table, long key, Object value) {
+        int capacity = table.keys.length;
+        while ((table.size + 1) * 2 > capacity) {
+            capacity *= 2;
+        }
+        long[] keys = new long[capacity];
+        Object[] values = new Object[capacity];
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.keys[i] != 0) {
+                insert(keys, values, table.keys[i], table.values[i]);
+            }
+        }
+        insert(keys, values, key, value);
+        return new Table(keys, values, table.size + 1);
+    }
+
+    //open addressing has no cheap delete, the rest is put into a new table, which also lets it shrink
+    private static Table copyWithout(Table table, long key) {
+        int size = table.size - 1;
+        int capacity = 2;
+        while (size * 2 > capacity) {
+            capacity *= 2;
+        }
+        long[] keys = new long[capacity];
+        Object[] values = new Object[capacity];
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.keys[i] != 0 && table.keys[i] != key) {
+                insert(keys, values, table.keys[i], table.values[i]);
+            }
+        }
+        return new Table(keys, values, size);
+    }
+
+    private static void insert(long[] keys, Object[] values, long key, Object value) {
+        int mask = keys.length - 1;
+        int slot = (int) spread(key) & mask;
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example;
+
+//Class to store information related to a message, and all the attributes for one.
+final class Message {
+    int messageID;
+    String sender;
+    String postDate;
+    String subject;
+    String content;
+    //where the message is in the journal (segment in the high 32 bits, offset in the low), -1 until it is durable
+    long location = -1;
+
+    //a copy with only the metadata, for messages whose subject and content are read back from the journal
+    public Message withoutBody() {
+        Message cold = new Message();
+        cold.messageID = messageID;
+        cold.sender = sender;
+        cold.postDate = postDate;
+        cold.location = location;
+        return cold;
+    }
+
+    //a copy at another place in the journal, with the body if this one has it
+    public Message movedTo(long newLocation) {
+        Message moved = withoutBody();
+        moved.subject = subject;
+        moved.content = content;
+        moved.location = newLocation;
+        return moved;
+    }
+
+    public boolean hasBody() {
+        return content != null;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example;
+
+//All packages needed for socket communication
+import java.io.IOException;
+
+//data structures we use for our data storage
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//logging package
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Class for the public message board 
+class MessageBoard {
+    private static final Logger logger = Logger.getLogger(MessageBoard.class.getName());
+    private MessageStore messages;
+    private UserRegistry users;
+    //the words of every subject and content, for search
+    private SearchIndex index = new SearchIndex();
+    //where the bodies of cold messages are read from, null when there is no journal and every body stays on the heap
+    private MessageJournal bodies;
+    //every message below this ID is in a snapshot file, only the snapshotter moves it
+    private int snapshotted;
+
+    //Constructor to create the store to hold the messages and the registry for the users
+    public MessageBoard() {
+        messages = new MessageStore();
+        users = new UserRegistry();
+    }
+
+    /*getters and setters - cont.
+     *none of them take the board's lock, the store and the registry are safe to share
+    */
+    //the ID the next message will get
+    public int getMessageID() {
+        return messages.size();
+    }
+
+    //the user methods only touch the registry, so they do not take the board's lock
+    public boolean getUser(String username) {
+        return users.contains(username);
+    }
+
+    public String[] getAllUsers() {
+        return users.toArray();
+    }
+
+    //returns false if the username is already on the board
+    public boolean addUser(String username) {
+        return users.add(username);
+    }
+
+    public void removeUser(String username) {
+        users.remove(username);
+    }
+
+    //once set, only the newest CONSTANTS.HOT_MESSAGES keep their subject and content on the heap,
+    //older ones keep their metadata and are read back from the journal's memory mapped segments
+    public void setBodySource(MessageJournal journal) {
+        this.bodies = journal;
+    }
+
+    //gives the message the next ID of this board and stores it, there is no limit on the number of messages.
+    //Nobody can read it until messageDurable, a post whose journal write fails is deleted without ever being seen
+    public int addMessage(Message message) {
+        return messages.append(message);
+    }
+
+    //called by the board's worker once the message is in the journal, only then can it be read or found by a search,
+    //and the message that just left the hot window goes cold
+    public void messageDurable(Message message) {
+        messages.publish(message.messageID);
+        index.add(message);
+        evictBody(message.messageID - CONSTANTS.HOT_MESSAGES);
+    }
+
+    //puts back a message that already has its ID, used when the board is rebuilt
+    public void restoreMessage(Message message) {
+        if (message.messageID < messages.size()) {
+            return;//already there
+        }
+        messages.restore(message);
+        index.add(message);
+        evictBody(message.messageID - CONSTANTS.HOT_MESSAGES);
+    }
+
+    //returns the last 2 messages, if there aren't any, return null ones
+    public Message[] getLast2() {
+        Message[] last2 = messages.getLast(2);
+        for (int i = 0; i < last2.length; i++) {
+            last2[i] = withBody(last2[i]);
+        }
+        return last2;
+    }
+
+    public boolean tryMessageID(int id) {
+        return messages.get(id) != null;
+    }
+
+    public Message getMessage(int id) {
+        return withBody(messages.get(id));
+    }
+
+    //a page of history, the messages posted before the cursor ID newest first, straight from the store by ID
+    public Message[] getPage(int before, int count) {
+        Message[] page = messages.getPage(before, count);
+        int found = 0;
+        for (Message message : page) {
+            Message full = withBody(message);
+            if (full != null) {
+                page[found++] = full;
+            }
+        }
+        return found == page.length ? page : Arrays.copyOf(page, found);
+    }
+
+    //the best matches for the words of the query, best first, does not wait on the board's worker
+    public Message[] search(String query, int limit) {
+        int[] ids = index.search(query, limit);
+        Message[] found = new Message[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            Message message = getMessage(id);
+            if (message != null) {//deleted since
+                found[count++] = message;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    //the ID after the newest message, a cursor that starts at the newest message
+    public int getNextMessageID() {
+        return messages.size();
+    }
+
+    //Writes the messages that are only in the journal segments below firstSegment to the snapshot, the ones already in
+    //snapshot files stay where they are, so a snapshot costs what was posted since the last one and not the whole board.
+    //Runs alongside the board's worker, which only ever appends after the messages written here. Nothing is pointed at
+    //the snapshot yet, that is left to the returned moves once every board is written: a covered message that cannot be
+    //read back fails the whole snapshot, so the segment it is in is not deleted
+    public SnapshotMoves snapshotTo(int board, MessageJournal.SnapshotWriter snapshot, long firstSegment) throws IOException {
+        SnapshotMoves moves = new SnapshotMoves();
+        int size = messages.size();
+        int id = snapshotted;
+        for (; id < size; id++) {
+            Message message = messages.get(id);
+            if (message == null) {
+                continue;
+            }
+            //IDs reach the journal in order, so the first message past the covered segments ends the snapshot
+            if (message.location < 0 || (bodies.inSegment(message.location) && (message.location >>> 32) >= firstSegment)) {
+                break;
+            }
+            if (!bodies.inSegment(message.location)) {
+                continue;//in a snapshot file already
+            }
+            Message full = withBody(message);
+            if (full == null) {
+                throw new IOException("Message " + id + " of board " + board + " could not be read back for the snapshot");
+            }
+            moves.add(id, snapshot.write(board, full));
+        }
+        moves.end = id;
+        //the new places can only be read once they are written out
+        snapshot.flush();
+        return moves;
+    }
+
+    //Class for the messages a snapshot wrote, moved to their new place once the snapshot is complete
+    final class SnapshotMoves {
+        private int[] ids = new int[64];
+        private long[] locations = new long[64];
+        private int count;
+        //every message below it is in a snapshot file once the moves are applied
+        private int end;
+
+        private void add(int id, long location) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                locations = Arrays.copyOf(locations, count * 2);
+            }
+            ids[count] = id;
+            locations[count++] = location;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void apply() {
+            for (int i = 0; i < count; i++) {
+                relocate(ids[i], locations[i]);
+            }
+            snapshotted = end;
+        }
+    }
+
+    private void relocate(int id, long location) {
+        while (true) {
+            Message message = messages.get(id);
+            if (message == null || messages.replace(id, message, message.movedTo(location))) {
+                return;
+            }
+        }
+    }
+
+    //swaps the stored message for its metadata, readers that already have the full message keep it
+    private void evictBody(int id) {
+        if (bodies == null || id < 0) {
+            return;
+        }
+        while (true) {
+            Message message = messages.get(id);
+            if (message == null || !message.hasBody() || message.location < 0
+                    || messages.replace(id, message, message.withoutBody())) {
+                return;
+            }
+        }
+    }
+
+    private Message withBody(Message message) {
+        if (message == null || message.hasBody() || bodies == null) {
+            return message;
+        }
+        try {
+            return bodies.readMessage(message.location);
+        } catch (IOException e) {
+            //a snapshot may have moved it since it was looked up
+            Message current = messages.get(message.messageID);
+            if (current != null && current.location != message.location) {
+                return withBody(current);
+            }
+            logger.log(Level.WARNING, "Could not read message " + message.messageID + " from the journal", e);
+            return null;
+        }
+    }
+
+    //this is not used currently, was not specified in project description
+    public void deleteMessage(int id) {
+        if (!messages.delete(id)) {
+            System.out.println("Message ID not found.");
+        }
+    }
+}
+
+//Class for the users of a board, a concurrent hash set so joins, leaves and membership checks are O(1)
+//and never wait on the board, the join order is kept only to list the users in the order they joined
+final class UserRegistry {
+    private ConcurrentHashMap<String, Long> joinOrder = new ConcurrentHashMap<>();
+    private AtomicLong nextJoin = new AtomicLong();
+
+    //returns false if the username is already taken
+    public boolean add(String username) {
+        return joinOrder.putIfAbsent(username, nextJoin.getAndIncrement()) == null;
+    }
+
+    public boolean remove(String username) {
+        return joinOrder.remove(username) != null;
+    }
+
+    public boolean contains(String username) {
+        return username != null && joinOrder.containsKey(username);
+    }
+
+    public int size() {
+        return joinOrder.size();
+    }
+
+    public String[] toArray() {
+        return joinOrder.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
+    }
+}
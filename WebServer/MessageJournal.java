@@ -0,0 +1,591 @@
+package com.example;
+
+//file packages for the journal segments
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+//data structures for the pending appends
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+//logging package
+import java.util.logging.Logger;
+
+//Class for the write ahead journal of every posted message, so the boards survive a restart.
+//The task threads only queue their appends, the commit thread writes everything that is waiting in one go and
+//forces it to disk once (group commit), then tells each poster its message is durable.
+//Durable messages get their location in the journal, the boards use it to read cold message bodies back through
+//memory mapped segments instead of keeping every body on the heap.
+//The journal is a directory of segment files journal-N.log, each a sequence of records:
+//  int length | int crc32 | byte kind | int board | int messageID | string sender | string postDate | string subject | string content
+//where length and crc32 cover everything after them and a string is an int byte count followed by UTF-8 bytes.
+//A snapshot is a set of snapshot-N.snap files in the same record format holding every message of the segments it
+//covers, the checkpoint file names the snapshot files and the first segment that is not covered. Snapshots are
+//incremental: the messages already in snapshot files stay where they are, a new snapshot only adds the messages of the
+//segments written since the last one, at the end of the last snapshot file while it has room and in new files after
+//that. Segment and snapshot files share one numbering so a message location always names exactly one file.
+final class MessageJournal implements Runnable {
+    private static final Logger logger = Logger.getLogger(MessageJournal.class.getName());
+    public static final byte MESSAGE_RECORD = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int CHECKPOINT_MAGIC = 0x4d42434b;
+
+    //Interface for whoever rebuilds the boards from the journal
+    interface Replay {
+        void message(int board, Message message);
+    }
+
+    //Class for an append waiting for the commit thread, an append without a message asks for a new segment
+    private static final class PendingAppend {
+        final int board;
+        final Message message;
+        final Runnable onDurable;
+        final Runnable onFailed;
+        //for a roll, the segment new appends go to, or why there is none
+        long rolledTo;
+        volatile IOException failure;
+
+        PendingAppend(int board, Message message, Runnable onDurable, Runnable onFailed) {
+            this.board = board;
+            this.message = message;
+            this.onDurable = onDurable;
+            this.onFailed = onFailed;
+        }
+    }
+
+    private Path directory;
+    private BlockingQueue<PendingAppend> pending = new LinkedBlockingQueue<>();
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentBytes;
+    //the last number given to a segment or snapshot file
+    private AtomicLong lastFileNumber = new AtomicLong();
+    //every segment and snapshot file in use, by number
+    private ConcurrentHashMap<Long, Path> files = new ConcurrentHashMap<>();
+    //read only mappings of the files, by number
+    private ConcurrentHashMap<Long, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+    //records written since the journal started, lets the snapshotter skip a snapshot when nothing changed
+    private volatile long recordCount;
+    //set once the journal could not be written, every append after that fails straight away
+    private volatile IOException failure;
+    //the snapshot files of the current checkpoint, oldest first, and how many bytes of the last one hold whole records
+    private List<Long> snapshotFiles = new ArrayList<>();
+    private long snapshotTailBytes;
+    //set by replayFile, how many bytes of the file it just read hold whole records
+    private long replayedBytes;
+
+    public MessageJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    //Loads the newest snapshot and then every segment after it in order, handing each message to the replay,
+    //must be called before the journal is started. Files the checkpoint no longer needs are deleted here
+    public int replay(Replay replay) throws IOException {
+        long firstSegment = 0;
+        List<Long> snapshotFiles = new ArrayList<>();
+        Path checkpoint = directory.resolve("checkpoint");
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            if (buffer.getInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Journal checkpoint " + checkpoint + " is not a checkpoint file");
+            }
+            firstSegment = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                snapshotFiles.add(buffer.getLong());
+            }
+        }
+
+        //senders and dates repeat across millions of messages, every replayed message shares one copy of each
+        HashMap<String, String> shared = new HashMap<>();
+        int count = 0;
+        for (long number : snapshotFiles) {
+            Path file = snapshotPath(number);
+            files.put(number, file);
+            count += replayFile(number, file, replay, shared);
+            lastFileNumber.accumulateAndGet(number, Math::max);
+            snapshotTailBytes = replayedBytes;
+        }
+        this.snapshotFiles = snapshotFiles;
+        for (long number : fileNumbers("journal-*.log")) {
+            Path file = segmentPath(number);
+            if (number < firstSegment) {
+                Files.delete(file);//already in the snapshot
+                continue;
+            }
+            files.put(number, file);
+            count += replayFile(number, file, replay, shared);
+            lastFileNumber.accumulateAndGet(number, Math::max);
+        }
+        for (long number : fileNumbers("snapshot-*.snap")) {
+            if (!snapshotFiles.contains(number)) {
+                Files.delete(snapshotPath(number));//an older snapshot, or one that never got its checkpoint
+            }
+        }
+        return count;
+    }
+
+    //a record that is cut short or fails its checksum ends its file, it was never acknowledged to anyone
+    private int replayFile(long number, Path file, Replay replay, HashMap<String, String> shared) throws IOException {
+        int count = 0;
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() || checksum(bytes, buffer.position(), length) != crc) {
+                logger.warning("Journal file " + file + " ends with a torn record at offset " + start + ", ignoring the rest.");
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(bytes, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if (record.get() != MESSAGE_RECORD) {
+                continue;
+            }
+            int board = record.getInt();
+            Message message = decodeMessage(record);
+            message.location = location(number, start);
+            message.sender = shared.computeIfAbsent(message.sender, value -> value);
+            message.postDate = shared.computeIfAbsent(message.postDate, value -> value);
+            replay.message(board, message);
+            count++;
+        }
+        replayedBytes = buffer.position();
+        return count;
+    }
+
+    //Queues the message for the journal, onDurable runs on the commit thread once the message is on disk.
+    //If the journal cannot be written onFailed runs instead, on the commit thread or, once the journal has
+    //stopped, straight away on the caller's
+    public void append(int board, Message message, Runnable onDurable, Runnable onFailed) {
+        enqueue(new PendingAppend(board, message, onDurable, onFailed));
+    }
+
+    //Starts a new segment and returns its number, every message appended before the call is durable and in an
+    //older file once this returns, so a snapshot of the boards taken afterwards covers all segments below the number
+    public long roll() throws InterruptedException, IOException {
+        CountDownLatch rolled = new CountDownLatch(1);
+        PendingAppend roll = new PendingAppend(-1, null, rolled::countDown, rolled::countDown);
+        enqueue(roll);
+        rolled.await();
+        if (roll.failure != null) {
+            throw roll.failure;
+        }
+        return roll.rolledTo;
+    }
+
+    private void enqueue(PendingAppend append) {
+        if (failure != null) {
+            fail(append, failure);
+            return;
+        }
+        pending.add(append);
+        if (failure != null) {
+            failPending();//the commit thread may have stopped after the check above and missed this one
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    //true while the message at the location is only in a journal segment, false once a snapshot file holds it
+    public boolean inSegment(long location) {
+        Path file = files.get(location >>> 32);
+        return file != null && file.getFileName().toString().startsWith("journal-");
+    }
+
+    //The commit thread, every batch is written and forced to disk together
+    @Override
+    public void run() {
+        List<PendingAppend> batch = new ArrayList<>();
+        List<PendingAppend> rolls = new ArrayList<>();
+        try {
+            openNextSegment();
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(pending.take());
+                pending.drainTo(batch);
+
+                long[] offsets = new long[batch.size()];
+                ByteBuffer data = encodeBatch(batch, segmentBytes, offsets);
+                while (data.hasRemaining()) {
+                    segment.write(data);
+                }
+                segment.force(false);
+                segmentBytes += data.limit();
+
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingAppend append = batch.get(i);
+                    if (append.message == null) {
+                        rolls.add(append);
+                        continue;
+                    }
+                    append.message.location = location(segmentNumber, offsets[i]);
+                    append.onDurable.run();
+                    recordCount++;
+                }
+                batch.clear();
+
+                if (segmentBytes >= CONSTANTS.JOURNAL_SEGMENT_BYTES || (!rolls.isEmpty() && segmentBytes > 0)) {
+                    openNextSegment();
+                }
+                for (PendingAppend roll : rolls) {
+                    roll.rolledTo = segmentNumber;
+                    roll.onDurable.run();
+                }
+                rolls.clear();
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Journal thread interrupted");
+        } catch (IOException e) {
+            //nothing is acknowledged once the journal cannot be written, everyone still waiting is told it failed
+            //so their tasks finish, and so is everyone who appends from now on
+            logger.severe("Journal stopped, messages are no longer durable: " + e.getMessage());
+            failure = e;
+            for (PendingAppend append : batch) {
+                fail(append, e);
+            }
+            for (PendingAppend roll : rolls) {
+                fail(roll, e);
+            }
+            failPending();
+        }
+    }
+
+    //fails whatever is still queued, whoever takes an append off the queue fails it so each fails once
+    private void failPending() {
+        PendingAppend append;
+        while ((append = pending.poll()) != null) {
+            fail(append, failure);
+        }
+    }
+
+    private static void fail(PendingAppend append, IOException e) {
+        append.failure = e;
+        append.onFailed.run();
+    }
+
+    private void openNextSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        segmentNumber = lastFileNumber.incrementAndGet();
+        files.put(segmentNumber, segmentPath(segmentNumber));
+        segment = FileChannel.open(segmentPath(segmentNumber),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = segment.size();
+    }
+
+    //offsets gets where each record starts in the segment
+    private static ByteBuffer encodeBatch(List<PendingAppend> batch, long start, long[] offsets) {
+        byte[][] records = new byte[batch.size()][];
+        int total = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).message == null) {
+                records[i] = new byte[0];//a roll
+                continue;
+            }
+            records[i] = encodeRecord(batch.get(i).board, batch.get(i).message);
+            offsets[i] = start + total;
+            total += records[i].length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(total);
+        for (byte[] record : records) {
+            data.put(record);
+        }
+        data.flip();
+        return data;
+    }
+
+    //a full record, header included
+    static byte[] encodeRecord(int board, Message message) {
+        byte[] sender = bytes(message.sender);
+        byte[] postDate = bytes(message.postDate);
+        byte[] subject = bytes(message.subject);
+        byte[] content = bytes(message.content);
+        int length = 1 + 4 + 4 + 16 + sender.length + postDate.length + subject.length + content.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length);
+        record.putInt(0);//checksum, filled in below
+        record.put(MESSAGE_RECORD);
+        record.putInt(board);
+        record.putInt(message.messageID);
+        putString(record, sender);
+        putString(record, postDate);
+        putString(record, subject);
+        putString(record, content);
+        record.putInt(4, checksum(record.array(), HEADER_BYTES, length));
+        return record.array();
+    }
+
+    //reads what follows the board of a message record
+    static Message decodeMessage(ByteBuffer record) {
+        Message message = new Message();
+        message.messageID = record.getInt();
+        message.sender = getString(record);
+        message.postDate = getString(record);
+        message.subject = getString(record);
+        message.content = getString(record);
+        return message;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        //mapped segments have no array behind them
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    //Opens the files for a new snapshot, see SnapshotWriter
+    public SnapshotWriter startSnapshot() {
+        return new SnapshotWriter();
+    }
+
+    //Makes the snapshot files, the earlier ones and the ones just written, the ones the journal starts from, then deletes
+    //the segments they cover. The checkpoint is replaced atomically, a crash before that leaves the previous checkpoint
+    //and all segments in place: records added to the end of its last snapshot file are then read from there, and the
+    //same messages in the segments after it are skipped as already restored
+    public void checkpoint(long firstSegment, SnapshotWriter snapshot) throws IOException {
+        List<Long> snapshotFiles = new ArrayList<>(this.snapshotFiles);
+        snapshotFiles.addAll(snapshot.finish());
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 4 + 8 * snapshotFiles.size());
+        buffer.putInt(CHECKPOINT_MAGIC);
+        buffer.putLong(firstSegment);
+        buffer.putInt(snapshotFiles.size());
+        for (long number : snapshotFiles) {
+            buffer.putLong(number);
+        }
+        buffer.flip();
+        Path next = directory.resolve("checkpoint.tmp");
+        try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(next, directory.resolve("checkpoint"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        this.snapshotFiles = snapshotFiles;
+        snapshotTailBytes = snapshot.tailBytes();
+
+        Set<Long> keep = new HashSet<>(snapshotFiles);
+        for (long number : new ArrayList<>(files.keySet())) {
+            if (number < firstSegment && !keep.contains(number)) {
+                Path file = files.remove(number);
+                mappings.remove(number);
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    //Class for writing the records of a snapshot, split into files of at most a segment's size so each can be mapped.
+    //It carries on at the end of the last snapshot file while that has room, then starts new files.
+    //Used by one thread, a record's location is only handed out once it has been written to its file
+    final class SnapshotWriter {
+        private List<Long> created = new ArrayList<>();
+        private FileChannel file;
+        private long fileNumber;
+        private long fileBytes;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+        //queues the record and returns where it will be, flush() before anyone reads it from there
+        public long write(int board, Message message) throws IOException {
+            byte[] record = encodeRecord(board, message);
+            if (file == null) {
+                openLastFile();
+            }
+            if (file == null || (fileBytes > 0 && fileBytes + record.length > CONSTANTS.JOURNAL_SEGMENT_BYTES)) {
+                nextFile();
+            }
+            if (record.length > buffer.remaining()) {
+                flush();
+            }
+            long location = location(fileNumber, fileBytes);
+            if (record.length > buffer.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(record);
+                while (large.hasRemaining()) {
+                    file.write(large);
+                }
+            } else {
+                buffer.put(record);
+            }
+            fileBytes += record.length;
+            return location;
+        }
+
+        //writes out the queued records, they can be mapped from then on
+        public void flush() throws IOException {
+            if (file == null) {
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        //Gives up on the snapshot, nobody may have been pointed at what it wrote. The files it started are deleted,
+        //what it added to the last snapshot file is cut off again by the next snapshot
+        public void abandon() throws IOException {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+            for (long number : created) {
+                files.remove(number);
+                mappings.remove(number);
+                Files.deleteIfExists(snapshotPath(number));
+            }
+            created.clear();
+        }
+
+        //the last snapshot file, cut back to its whole records, if it is not full yet
+        private void openLastFile() throws IOException {
+            if (snapshotFiles.isEmpty() || snapshotTailBytes >= CONSTANTS.JOURNAL_SEGMENT_BYTES) {
+                return;
+            }
+            fileNumber = snapshotFiles.get(snapshotFiles.size() - 1);
+            file = FileChannel.open(snapshotPath(fileNumber), StandardOpenOption.WRITE);
+            file.truncate(snapshotTailBytes);
+            file.position(snapshotTailBytes);
+            fileBytes = snapshotTailBytes;
+            //a mapping made before an abandoned snapshot may still show its records
+            mappings.remove(fileNumber);
+        }
+
+        private void nextFile() throws IOException {
+            if (file != null) {
+                flush();
+                file.force(false);
+                file.close();
+            }
+            fileNumber = lastFileNumber.incrementAndGet();
+            Path path = snapshotPath(fileNumber);
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            fileBytes = 0;
+            files.put(fileNumber, path);
+            created.add(fileNumber);
+        }
+
+        //the files this snapshot started, once everything is on disk
+        private List<Long> finish() throws IOException {
+            if (file != null) {
+                flush();
+                file.force(false);
+                file.close();
+                file = null;
+            }
+            return created;
+        }
+
+        //the whole records in the last snapshot file once this snapshot is the checkpoint's
+        private long tailBytes() {
+            return created.isEmpty() && fileNumber == 0 ? snapshotTailBytes : fileBytes;
+        }
+    }
+
+    //Reads a durable message back from its segment, through a memory mapping so the segment stays in the page cache
+    //rather than on the heap, can be called from any thread
+    public Message readMessage(long location) throws IOException {
+        long number = location >>> 32;
+        int offset = (int) location;//files are never bigger than a segment
+        ByteBuffer record = mapped(number, offset).duplicate();
+        record.position(offset);
+        int length = record.getInt();
+        record.getInt();//checksum, it was checked when the record was written or replayed
+        record.limit(record.position() + length);
+        record.get();//kind
+        record.getInt();//board
+        Message message = decodeMessage(record);
+        message.location = location;
+        return message;
+    }
+
+    //the mapping of a segment that covers the offset, the segment being written is mapped again once it outgrows its mapping
+    private MappedByteBuffer mapped(long number, int offset) throws IOException {
+        MappedByteBuffer mapping = mappings.get(number);
+        if (mapping != null && offset + HEADER_BYTES <= mapping.capacity()
+                && offset + HEADER_BYTES + mapping.getInt(offset) <= mapping.capacity()) {
+            return mapping;
+        }
+        Path file = files.get(number);
+        if (file == null) {
+            throw new IOException("Journal file " + number + " has been compacted away");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (offset + HEADER_BYTES > mapping.capacity() || offset + HEADER_BYTES + mapping.getInt(offset) > mapping.capacity()) {
+            throw new IOException("Journal file " + number + " has no record at offset " + offset);
+        }
+        mappings.put(number, mapping);
+        return mapping;
+    }
+
+    static long location(long segmentNumber, long offset) {
+        return (segmentNumber << 32) | offset;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("journal-%010d.log", number));
+    }
+
+    private Path snapshotPath(long number) {
+        return directory.resolve(String.format("snapshot-%010d.snap", number));
+    }
+
+    //the numbers of the files on disk matching the pattern, oldest first
+    private List<Long> fileNumbers(String pattern) throws IOException {
+        TreeMap<Long, Path> numbers = new TreeMap<>();
+        try (DirectoryStream<Path> found = Files.newDirectoryStream(directory, pattern)) {
+            for (Path file : found) {
+                String name = file.getFileName().toString();
+                numbers.put(Long.parseLong(name.substring(name.indexOf('-') + 1, name.indexOf('.'))), file);
+            }
+        }
+        return new ArrayList<>(numbers.keySet());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example;
+
+//data structures for the store
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Class for the messages of one board, an append only list split into fixed size segments.
+//A message's ID is its position, so appending and looking up by ID are O(1) and the store never copies messages,
+//only the small directory of segments is copied when it fills up. Deleting leaves a tombstone (null) behind.
+//Appends are made by one thread at a time, reads never lock: the size is published after the slot is written.
+//An appended message is pending until publish, readers only see the messages below the published ID, so a post that
+//is not in the journal yet, or never gets there, is never served
+final class MessageStore {
+    private static final int SEGMENT_BITS = CONSTANTS.MESSAGE_SEGMENT_BITS;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile AtomicReferenceArray<Message>[] segments;
+    private volatile int size;
+    //every ID below it can be read, the ones from it up to size are still pending
+    private volatile int published;
+    private AtomicInteger tombstones = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MessageStore() {
+        segments = new AtomicReferenceArray[16];
+    }
+
+    //stores the message under the next ID, sets its messageID and returns it, readers only see it once it is published
+    public synchronized int append(Message message) {
+        int id = size;
+        message.messageID = id;
+        segmentFor(id).set(id & SEGMENT_MASK, message);
+        size = id + 1;
+        return id;
+    }
+
+    //stores a message under the ID it already has, used when a board is rebuilt, skipped IDs become tombstones
+    public synchronized void restore(Message message) {
+        int id = message.messageID;
+        if (id < size) {
+            return;//already there
+        }
+        segmentFor(id).set(id & SEGMENT_MASK, message);
+        tombstones.addAndGet(id - size);
+        size = id + 1;
+        published = size;
+    }
+
+    //makes the message with the ID and every pending one before it readable, called in ID order.
+    //A pending message that is not going to be published is deleted first, it stays a tombstone
+    public synchronized void publish(int id) {
+        if (id >= published) {
+            published = Math.min(id + 1, size);
+        }
+    }
+
+    //null if the ID was never used, is still pending or the message was deleted
+    public Message get(int id) {
+        if (id < 0 || id >= published) {
+            return null;
+        }
+        return segments[id >>> SEGMENT_BITS].get(id & SEGMENT_MASK);
+    }
+
+    //swaps the message stored under the ID, only if it is still the expected one
+    public boolean replace(int id, Message expected, Message replacement) {
+        if (id < 0 || id >= size) {
+            return false;
+        }
+        return segments[id >>> SEGMENT_BITS].compareAndSet(id & SEGMENT_MASK, expected, replacement);
+    }
+
+    //returns false if there was no message with the ID
+    public boolean delete(int id) {
+        if (id < 0 || id >= size) {
+            return false;
+        }
+        if (segments[id >>> SEGMENT_BITS].getAndSet(id & SEGMENT_MASK, null) == null) {
+            return false;
+        }
+        tombstones.incrementAndGet();
+        return true;
+    }
+
+    //the newest count messages, newest first, padded with nulls if the board has fewer
+    public Message[] getLast(int count) {
+        Message[] last = new Message[count];
+        int found = 0;
+        for (int id = published - 1; id >= 0 && found < count; id--) {
+            Message message = get(id);
+            if (message != null) {
+                last[found++] = message;
+            }
+        }
+        return last;
+    }
+
+    //up to count messages with an ID below before, newest first, tombstones are skipped
+    public Message[] getPage(int before, int count) {
+        Message[] page = new Message[count];
+        int found = 0;
+        for (int id = Math.min(before, published) - 1; id >= 0 && found < count; id--) {
+            Message message = get(id);
+            if (message != null) {
+                page[found++] = message;
+            }
+        }
+        return Arrays.copyOf(page, found);
+    }
+
+    //the ID after the newest published message
+    public int size() {
+        return published;
+    }
+
+    public int liveCount() {
+        return published - tombstones.get();
+    }
+
+    //only called with the store's lock held
+    private AtomicReferenceArray<Message> segmentFor(int id) {
+        int index = id >>> SEGMENT_BITS;
+        AtomicReferenceArray<Message>[] current = segments;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, index + 1));
+        }
+        if (current[index] == null) {
+            current[index] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        }
+        //published before the size, so a reader that sees the new size also sees the segment
+        segments = current;
+        return current[index];
+    }
+}
@@ -0,0 +1,85 @@
+package com.example;
+
+//All packages needed for socket communication
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//json packages
+import javax.json.JsonObject;
+
+//Class for a frame going out to clients, encoded once and never changed afterwards, so one frame can be queued
+//for every recipient of a broadcast instead of serializing the same notification for each of them.
+//The framing is added by the connection's writer: newline delimited json by default, or, once the client asked
+//for it with setFraming, a 4 byte big endian length before the json so the client can cut frames without scanning
+final class OutboundFrame {
+    public static final int NEWLINE_FRAMING = 0;
+    public static final int LENGTH_FRAMING = 1;
+    private static final byte[] NEWLINE = {'\n'};
+    private final byte[] data;
+    //the framing the connection switches to after this frame, -1 to keep the one it has
+    private int framingAfter = -1;
+    //responses are essential, broadcast notifications are not and can be left out for a slow consumer
+    private boolean essential = true;
+
+    public OutboundFrame(String json) {
+        this.data = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public OutboundFrame(JsonObject json) {
+        this(json.toString());
+    }
+
+    //for the reply to setFraming, which is still sent in the old framing, only used on frames for a single client
+    public OutboundFrame thenSwitchTo(int framing) {
+        framingAfter = framing;
+        return this;
+    }
+
+    public int getFramingAfter() {
+        return framingAfter;
+    }
+
+    //for the broadcast notifications, set before the frame is queued for anyone
+    public OutboundFrame notification() {
+        essential = false;
+        return this;
+    }
+
+    public boolean isEssential() {
+        return essential;
+    }
+
+    //the framed frame for a gathering write, every writer gets its own read only views, the bytes themselves are shared
+    public ByteBuffer[] buffers(int framing) {
+        ByteBuffer body = ByteBuffer.wrap(data).asReadOnlyBuffer();
+        if (framing == LENGTH_FRAMING) {
+            ByteBuffer length = ByteBuffer.allocate(4).putInt(0, data.length);
+            return new ByteBuffer[] {length, body};
+        }
+        return new ByteBuffer[] {body, ByteBuffer.wrap(NEWLINE).asReadOnlyBuffer()};
+    }
+
+    public void writeTo(OutputStream out, int framing) throws IOException {
+        if (framing == LENGTH_FRAMING) {
+            out.write(data.length >>> 24);
+            out.write(data.length >>> 16);
+            out.write(data.length >>> 8);
+            out.write(data.length);
+            out.write(data);
+        } else {
+            out.write(data);
+            out.write('\n');
+        }
+    }
+
+    public int length() {
+        return data.length;
+    }
+
+    //the bytes on the wire, with the framing
+    public int framedLength(int framing) {
+        return data.length + (framing == LENGTH_FRAMING ? 4 : NEWLINE.length);
+    }
+}
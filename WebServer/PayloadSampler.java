@@ -0,0 +1,31 @@
+package com.example;
+
+//data structures for the ring buffer
+import java.util.concurrent.ThreadLocalRandom;
+
+//logging packages
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Class for deciding which requests and responses are logged with their whole json. At INFO only one in every
+//LOG_SAMPLE_EVERY is, everything is at FINE, and nothing is once INFO is off. Sampling takes no shared state,
+//so the threads that ask do not contend
+final class PayloadSampler {
+    private static volatile int every = CONSTANTS.LOG_SAMPLE_EVERY;
+
+    private PayloadSampler() {
+    }
+
+    //0 logs no payloads at INFO
+    static void setEvery(int sampleEvery) {
+        every = sampleEvery;
+    }
+
+    static boolean sample(Logger logger) {
+        if (logger.isLoggable(Level.FINE)) {
+            return true;
+        }
+        int n = every;
+        return n > 0 && logger.isLoggable(Level.INFO) && ThreadLocalRandom.current().nextInt(n) == 0;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example;
+
+//Class for the inherited private message board
+final class PrivateMessageBoard extends MessageBoard {
+    private int groupID;//only change is that we have a groupID and groupName
+    private String groupName;
+
+    public PrivateMessageBoard(Integer groupID, String groupName){
+        super();
+        this.groupID = groupID;
+        this.groupName = groupName;
+    }
+    //getters and setters - cont.
+    public Integer getGroupId(){
+        return groupID;
+    }
+    public String getGroupName(){
+        return groupName;
+    }
+}
@@ -0,0 +1,360 @@
+package com.example;
+
+//All packages needed for socket communication
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+//data structures we use for our data storage
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//logging package
+import java.util.logging.Logger;
+
+//json packages
+import javax.json.Json;
+
+//Class for the Profile of the user/connected client, needs to be maintained at server level,
+//not thread level as in/out streams need to be kept open at all times (they will close the whole connection if not)
+//Everything sent to the client goes through the bounded outbound queue, the task threads only add frames to it
+//and the client's own writer (a writer thread, or the selector loop in nio mode) does the actual socket writes.
+//A client that lets the queue fill up to the high water mark is lagging until its writer gets it back down to the
+//low water mark, and the server's slow consumer policy decides what happens to its notifications meanwhile
+final class Profile {
+    private static final Logger logger = Logger.getLogger(Profile.class.getName());
+    private long sessionId;
+    private Socket socket;
+    private InputStream in;
+    private OutputStream rawOut;
+    private String username;
+    private BlockingQueue<OutboundFrame> outbound = new ArrayBlockingQueue<>(CONSTANTS.MAX_OUTBOUND_FRAMES);
+    //wakes the selector loop up when frames are added, only set for reactor connections
+    private Runnable writeSignal;
+    private Thread writerThread;
+    private volatile boolean closed;
+    private volatile boolean lagging;
+    //set once the disconnect policy gave up on the client, the selector loop closes the connection when it sees it
+    private AtomicBoolean evicted = new AtomicBoolean();
+    //notifications the client did not get while it was lagging, and frames dropped since it connected
+    private AtomicInteger skippedNotifications = new AtomicInteger();
+    private AtomicLong droppedFrames = new AtomicLong();
+    //only the client's writer adds to these, anyone can read them for the stats
+    private volatile long framesWritten;
+    private volatile long bytesWritten;
+    //set while the session can be resumed, once the connection drops the frames for it are kept for the replay,
+    //oldest first, along with how many of the oldest did not fit
+    private volatile boolean resumable;
+    private ArrayDeque<OutboundFrame> missed;
+    private int missedDropped;
+    //set once a new connection took the session over, frames that still reach this profile are passed on to it
+    private Profile resumedBy;
+    //set while a resume replays the missed frames, live frames wait here so they reach the client after the replay
+    private volatile ArrayDeque<OutboundFrame> held;
+
+    public Profile(long sessionId, Socket socket) {
+        this.sessionId = sessionId;
+        this.socket = socket;
+        this.username = null;
+        try {
+            this.rawOut = this.socket.getOutputStream();
+            this.in = this.socket.getInputStream();
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+    }
+
+    //Profile for a reactor connection, there is no reader or writer thread as the selector loop does the reading
+    //and drains the outbound queue once it is signalled
+    public Profile(long sessionId, SocketChannel channel, Runnable writeSignal) {
+        this.sessionId = sessionId;
+        this.socket = channel.socket();
+        this.username = null;
+        this.in = null;
+        this.writeSignal = writeSignal;
+    }
+
+    //Starts the writer of a blocking connection, on the same kind of thread as its ListenThread
+    public void startWriter() {
+        writerThread = Server.startConnectionThread(new OutboundWriter(this, rawOut));
+    }
+
+    //Adds a frame for the client, never blocks, the frame is dropped if the client is too far behind
+    public boolean send(String json) {
+        return send(new OutboundFrame(json));
+    }
+
+    public boolean send(OutboundFrame frame) {
+        if (held != null && hold(frame)) {
+            return true;
+        }
+        return deliver(frame);
+    }
+
+    private boolean deliver(OutboundFrame frame) {
+        return closed ? sendWhileClosed(frame) : enqueue(frame);
+    }
+
+    private boolean enqueue(OutboundFrame frame) {
+        if (!lagging && outbound.size() >= CONSTANTS.OUTBOUND_HIGH_WATER) {
+            startLagging();
+        }
+        if (lagging && !frame.isEssential() && !"disconnect".equals(Server.getSlowConsumerPolicy())) {
+            //drop and coalesce both keep the notification out of the queue, coalesce tells the client later
+            skippedNotifications.incrementAndGet();
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        if (!outbound.offer(frame)) {
+            droppedFrames.incrementAndGet();
+            logger.warning("[Client " + sessionId + "] Outbound queue full, dropping frame.");
+            return false;
+        }
+        if (writeSignal != null) {
+            writeSignal.run();
+        }
+        return true;
+    }
+
+    public OutboundFrame pollOutbound() {
+        OutboundFrame frame = outbound.poll();
+        if (lagging && frame != null) {
+            checkCaughtUp();
+        }
+        return frame;
+    }
+
+    public OutboundFrame takeOutbound() throws InterruptedException {
+        OutboundFrame frame = outbound.take();
+        if (lagging) {
+            checkCaughtUp();
+        }
+        return frame;
+    }
+
+    //frames waiting to be written, i.e. how far behind the client is
+    public int getOutboundLag() {
+        return outbound.size();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    public boolean isEvicted() {
+        return evicted.get();
+    }
+
+    //only called by the client's writer, through ServerMetrics.wrote
+    void wrote(long bytes, boolean frameDone) {
+        bytesWritten += bytes;
+        if (frameDone) {
+            framesWritten++;
+        }
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    //the stats are only for the machine the server runs on
+    public boolean isLocal() {
+        return socket.getInetAddress() != null && socket.getInetAddress().isLoopbackAddress();
+    }
+
+    private synchronized void startLagging() {
+        if (lagging || closed) {
+            return;
+        }
+        lagging = true;
+        String policy = Server.getSlowConsumerPolicy();
+        logger.warning("[Client " + sessionId + "] Slow consumer, " + outbound.size() + " frames waiting, policy " + policy + ".");
+        if ("disconnect".equals(policy) && evicted.compareAndSet(false, true)) {
+            //resuming would only hand the backlog it could not keep up with back to it, it is removed for good
+            resumable = false;
+            if (writeSignal != null) {
+                //the selector loop closes it and queues the ServerRemove, like when the client hangs up
+                writeSignal.run();
+            } else {
+                //the ListenThread's read fails and it queues the ServerRemove
+                closeAll();
+            }
+        }
+    }
+
+    //only called by the client's writer
+    private synchronized void checkCaughtUp() {
+        if (!lagging || outbound.size() > CONSTANTS.OUTBOUND_LOW_WATER) {
+            return;
+        }
+        lagging = false;
+        int skipped = skippedNotifications.getAndSet(0);
+        logger.info("[Client " + sessionId + "] Caught up, " + skipped + " notifications skipped while lagging.");
+        if (skipped > 0 && "coalesce".equals(Server.getSlowConsumerPolicy())) {
+            //one notification in place of all the ones the client missed
+            outbound.offer(new OutboundFrame(Json.createObjectBuilder()
+                    .add("type", "ServerNotification")
+                    .add("data-type", "text")
+                    .add("data", skipped + " notifications were skipped while you were behind, use messages to catch up")
+                    .add("skipped", skipped)
+                    .build()));
+        }
+    }
+
+    //getters and setters cont.
+    public InputStream getIn() {
+        return in;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void closeAll() {
+        synchronized (this) {
+            closed = true;
+            if (resumable && missed == null) {
+                //what the writer had not sent yet is missed as well
+                missed = new ArrayDeque<>();
+                OutboundFrame frame;
+                while ((frame = outbound.poll()) != null) {
+                    keepMissed(frame);
+                }
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        outbound.clear();
+    }
+
+    public void setUsername(String uname) {
+        username = uname;
+    }
+
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    //The frames missed since the connection dropped, handed over once to the connection that resumed the session,
+    //anything sent to this profile afterwards goes to that connection too
+    public synchronized ArrayDeque<OutboundFrame> handOver(Profile resumed) {
+        ArrayDeque<OutboundFrame> taken = missed == null ? new ArrayDeque<>() : missed;
+        missed = null;
+        resumable = false;
+        resumedBy = resumed;
+        return taken;
+    }
+
+    private synchronized boolean sendWhileClosed(OutboundFrame frame) {
+        if (resumedBy != null) {
+            return resumedBy.send(frame);
+        }
+        return resumable && keepMissed(frame);
+    }
+
+    //Frames sent from now on wait until releaseFrames, so a replay can go out ahead of them
+    public synchronized void holdFrames() {
+        held = new ArrayDeque<>();
+    }
+
+    //Queues the frames given first and then the ones that waited, in the order they were sent.
+    //Frames sent meanwhile wait on the lock in hold and go after all of them
+    public synchronized void releaseFrames(ArrayDeque<OutboundFrame> first) {
+        for (OutboundFrame frame : first) {
+            deliver(frame);
+        }
+        for (OutboundFrame frame : held) {
+            deliver(frame);
+        }
+        held = null;
+    }
+
+    private synchronized boolean hold(OutboundFrame frame) {
+        if (held == null) {
+            return false;//released meanwhile
+        }
+        held.add(frame);
+        return true;
+    }
+
+    public synchronized int getMissedDropped() {
+        return missedDropped;
+    }
+
+    private synchronized boolean keepMissed(OutboundFrame frame) {
+        if (missed == null) {
+            return false;
+        }
+        if (missed.size() >= CONSTANTS.MAX_MISSED_FRAMES) {
+            missed.poll();
+            missedDropped++;
+        }
+        missed.add(frame);
+        return true;
+    }
+
+    public String getUserName() {
+        return username;
+    }
+}
+
+//Class for the writer of a blocking connection, drains the Profile's outbound queue into the socket,
+//frames that are already waiting are written together and flushed once
+final class OutboundWriter implements Runnable {
+    private static final Logger logger = Logger.getLogger(OutboundWriter.class.getName());
+    private Profile profile;
+    private OutputStream out;
+    private int framing = OutboundFrame.NEWLINE_FRAMING;
+
+    public OutboundWriter(Profile profile, OutputStream out) {
+        this.profile = profile;
+        this.out = new BufferedOutputStream(out, 8192);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                OutboundFrame frame = profile.takeOutbound();
+                while (frame != null) {
+                    frame.writeTo(out, framing);
+                    ServerMetrics.wrote(profile, frame.framedLength(framing), true);
+                    if (frame.getFramingAfter() >= 0) {
+                        framing = frame.getFramingAfter();
+                    }
+                    frame = profile.pollOutbound();
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            // Connection closed, nothing left to write
+        } catch (IOException e) {
+            logger.warning("Failed to write to client: " + e.getMessage());
+        }
+    }
+}
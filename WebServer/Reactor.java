@@ -0,0 +1,274 @@
+package com.example;
+
+//All packages needed for non-blocking socket communication
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//data structures used to hand work between the acceptor, the selector loops and the task thread
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//logging package
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonObject;
+
+//Class for the reactor mode of the server, one acceptor hands new connections to a few selector loops
+//which decode the json requests of every client they own, instead of one blocked thread per client
+final class Reactor implements Runnable {
+    private static final Logger logger = Logger.getLogger(Reactor.class.getName());
+    private int port;
+    private SelectorLoop[] loops;
+    private IngressQueue taskQueue;
+
+    public Reactor(int port, int selectorCount, IngressQueue taskQueue) throws IOException {
+        this.port = port;
+        this.taskQueue = taskQueue;
+        this.loops = new SelectorLoop[selectorCount];
+        for (int i = 0; i < selectorCount; i++) {
+            loops[i] = new SelectorLoop(i, taskQueue);
+        }
+    }
+
+    //The acceptor, starts the selector loops then accepts connections forever, spreading them round robin
+    @Override
+    public void run() {
+        for (SelectorLoop loop : loops) {
+            Thread thread = new Thread(loop, "selector-" + loop.getIndex());
+            thread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            int next = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            logger.severe("Acceptor stopped: " + e.getMessage());
+        }
+    }
+}
+
+//Class for the state the reactor keeps per client, the decoder holding the partial request and the frame being written,
+//the frames still waiting are in the outbound queue of the client's Profile
+final class NioConnection {
+    final SocketChannel channel;
+    final long sessionId;
+    final RequestDecoder decoder = new RequestDecoder();
+    RequestDecoder.Sink requests;
+    //set while the connection is waiting in the loop's write ready queue, so it is only added once
+    final AtomicBoolean writeScheduled = new AtomicBoolean();
+    Profile profile;
+    //the framed frame being written, and how frames are delimited for this client
+    ByteBuffer[] currentWrite;
+    int framing = OutboundFrame.NEWLINE_FRAMING;
+    SelectionKey key;
+
+    public NioConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.sessionId = Server.newSessionId();
+    }
+}
+
+//Class for one selector loop, owns a set of connections and does all reading and writing for them
+final class SelectorLoop implements Runnable {
+    private static final Logger logger = Logger.getLogger(SelectorLoop.class.getName());
+    private int index;
+    private Selector selector;
+    private IngressQueue taskQueue;
+    //connections handed over by the acceptor and connections with new writes, both picked up on the loop thread
+    private ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+    private ConcurrentLinkedQueue<NioConnection> writeReady = new ConcurrentLinkedQueue<>();
+    //one read buffer per loop is enough as every read is handled before the next one
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192);
+
+    public SelectorLoop(int index, IngressQueue taskQueue) throws IOException {
+        this.index = index;
+        this.taskQueue = taskQueue;
+        this.selector = Selector.open();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    //called from the acceptor thread
+    public void register(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    //called from the task threads when frames have been added to the outbound queue of this connection
+    public void signalWrite(NioConnection connection) {
+        if (connection.writeScheduled.compareAndSet(false, true)) {
+            writeReady.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+                registerNewChannels();
+                flushWriteReady();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(connection);
+                    }
+                }
+            } catch (IOException e) {
+                logger.severe("Selector loop " + index + " IOException: " + e.getMessage());
+            }
+        }
+    }
+
+    private void registerNewChannels() {
+        SocketChannel channel;
+        while ((channel = newChannels.poll()) != null) {
+            NioConnection connection = new NioConnection(channel);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (ClosedChannelException e) {
+                continue;
+            }
+            // Add to our map of connections, then welcome the user like the ListenThread does
+            NioConnection registered = connection;
+            connection.profile = new Profile(connection.sessionId, channel, () -> signalWrite(registered));
+            connection.requests = new RequestDecoder.Sink() {
+                @Override
+                public void request(JsonObject jsonObject) {
+                    //the whole request only for a sample of them, like the ListenThread
+                    if (PayloadSampler.sample(logger)) {
+                        logger.info("[Client " + registered.sessionId + "] Received JSON: " + jsonObject.toString());
+                    }
+                    // Refused with a ServerDeny instead of queued if the client is over its rate
+                    if (taskQueue.submit(new Task(registered.sessionId, jsonObject)) && logger.isLoggable(Level.FINE)) {
+                        logger.fine("[Client " + registered.sessionId + "] Task added to queue.");
+                    }
+                }
+
+                @Override
+                public void invalid(String input) {
+                    logger.warning("[Client " + registered.sessionId + "] Invalid JSON received: " + input);
+                }
+            };
+            Server.addUserProfile(connection.sessionId, connection.profile);
+            JsonObject welcomeJson = Json.createObjectBuilder()
+                .add("type", "ServerWelcome")
+                .add("action", "ServerWelcome")
+                .build();
+            taskQueue.put(new Task(connection.sessionId, welcomeJson)); // never refused, unlike the client's own requests
+        }
+    }
+
+    private void flushWriteReady() {
+        NioConnection connection;
+        while ((connection = writeReady.poll()) != null) {
+            if (connection.key.isValid()) {
+                write(connection);
+            }
+        }
+    }
+
+    //read whatever is available and turn every complete request into a task
+    private void read(NioConnection connection) {
+        int count;
+        try {
+            readBuffer.clear();
+            count = connection.channel.read(readBuffer);
+        } catch (IOException e) {
+            logger.severe("[Client " + connection.sessionId + "] IOException in SelectorLoop: " + e.getMessage());
+            count = -1;
+        }
+        if (count < 0) {
+            logger.info("[Client " + connection.sessionId + "] Connection closed by client.");
+            close(connection);
+            return;
+        }
+        readBuffer.flip();
+        connection.decoder.feed(readBuffer);
+        connection.decoder.decode(connection.requests);
+    }
+
+    //drain the outbound queue as far as the socket takes it, and only ask for OP_WRITE while something is left over
+    private void write(NioConnection connection) {
+        //cleared before draining, so frames added from now on schedule the connection again
+        connection.writeScheduled.set(false);
+        if (connection.profile.isEvicted()) {
+            //too far behind under the disconnect policy
+            close(connection);
+            return;
+        }
+        try {
+            while (true) {
+                if (connection.currentWrite == null) {
+                    OutboundFrame frame = connection.profile.pollOutbound();
+                    if (frame == null) {
+                        break;
+                    }
+                    connection.currentWrite = frame.buffers(connection.framing);
+                    if (frame.getFramingAfter() >= 0) {
+                        connection.framing = frame.getFramingAfter();
+                    }
+                }
+                //gathering write, the framing and the shared json bytes go out without being copied together
+                long written = connection.channel.write(connection.currentWrite);
+                if (connection.currentWrite[connection.currentWrite.length - 1].hasRemaining()) {
+                    ServerMetrics.wrote(connection.profile, written, false);
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                ServerMetrics.wrote(connection.profile, written, true);
+                connection.currentWrite = null;
+            }
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            logger.warning("[Client " + connection.sessionId + "] Failed to write: " + e.getMessage());
+            close(connection);
+        }
+    }
+
+    //same cleanup as the finally block of the ListenThread
+    private void close(NioConnection connection) {
+        JsonObject removeJson = Json.createObjectBuilder()
+            .add("type", "ServerRemove")
+            .add("action", "ServerRemove")
+            .build();
+        taskQueue.putLast(new Task(connection.sessionId, removeJson)); // the client's last task, its queue goes with it
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.warning("[Client " + connection.sessionId + "] Error closing socket: " + e.getMessage());
+        }
+        //the profile itself is removed from the server by the remove task, which still needs its username
+        connection.profile.closeAll();
+        logger.info("[Client " + connection.sessionId + "] Connection closed and user removed.");
+    }
+}
@@ -0,0 +1,22 @@
+package com.example;
+
+//json packages
+import javax.json.JsonObject;
+
+//Class for what a handler gets to know about the request it handles
+final class RequestContext {
+    final Task task;
+    final long sessionId;
+    final Profile profile;
+    final JsonObject json;
+    //null until the client joined
+    final String username;
+
+    public RequestContext(Task task, long sessionId, Profile profile, JsonObject json, String username) {
+        this.task = task;
+        this.sessionId = sessionId;
+        this.profile = profile;
+        this.json = json;
+        this.username = username;
+    }
+}
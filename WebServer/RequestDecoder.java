@@ -0,0 +1,178 @@
+package com.example;
+
+//packages for reading the bytes
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+
+//Class for turning the bytes a client sends into requests, one per connection.
+//Bytes are kept in one growing buffer and scanned once as they arrive, counting braces outside of strings, so a read
+//can hold several requests or part of one and nothing is turned into a String first: every complete object is parsed
+//straight from its bytes in the buffer. Requests no longer need the newline, but it is still accepted between them.
+//A json array of request objects is a batch, each of its objects is handed on as a request of its own.
+//Bytes between requests that are not json are skipped up to the next { or [ or newline, so a request sent right
+//after them on the same line still gets through
+final class RequestDecoder {
+    //looking the json provider up is the expensive part of Json.createReader, so every connection shares one factory
+    private static final JsonReaderFactory readers = Json.createReaderFactory(null);
+
+    //Interface for whoever takes the decoded requests
+    interface Sink {
+        void request(JsonObject request);
+
+        //the bytes of something that was not a json object, skipped up to where the next request can start
+        void invalid(String input);
+    }
+
+    private byte[] buffer = new byte[8192];
+    //bytes in the buffer, how far they have been scanned and where the current request starts, -1 between requests
+    private int end;
+    private int scanned;
+    private int start = -1;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    //set while skipping garbage up to the next { or [ or newline
+    private boolean skipping;
+    //set while the rest of a request over the size limit goes by, its braces are still counted to find its end
+    private boolean dropping;
+
+    //Blocking connections read into the buffer directly, returns -1 at the end of the stream like InputStream.read
+    public int readFrom(InputStream in) throws IOException {
+        makeRoom();
+        int count = in.read(buffer, end, buffer.length - end);
+        if (count > 0) {
+            end += count;
+        }
+        return count;
+    }
+
+    //Reactor connections hand over what their read buffer holds
+    public void feed(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            makeRoom();
+            int count = Math.min(bytes.remaining(), buffer.length - end);
+            bytes.get(buffer, end, count);
+            end += count;
+        }
+    }
+
+    //Hands every complete request read so far to the sink, the part of the next one stays in the buffer
+    public void decode(Sink sink) {
+        for (; scanned < end; scanned++) {
+            byte b = buffer[scanned];
+            if (skipping) {
+                if (b != '\n' && b != '{' && b != '[') {
+                    continue;
+                }
+                sink.invalid(new String(buffer, start, scanned - start, StandardCharsets.UTF_8));
+                skipping = false;
+                start = -1;
+                if (b == '\n') {
+                    continue;
+                }
+                //a request starts right here
+            }
+            if (start < 0) {
+                if (b == '{' || b == '[') {
+                    start = scanned;
+                    depth = 1;
+                } else if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    start = scanned;
+                    skipping = true;
+                }
+                continue;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                if (dropping) {
+                    dropping = false;
+                } else {
+                    parse(sink, start, scanned + 1 - start);
+                }
+                start = -1;
+            }
+        }
+        if (start < 0) {
+            //nothing pending, the buffer can start over
+            end = 0;
+            scanned = 0;
+        } else if (dropping) {
+            //nothing of it is kept
+            start = 0;
+            end = 0;
+            scanned = 0;
+        } else if (scanned - start > CONSTANTS.MAX_REQUEST_BYTES) {
+            sink.invalid("request over " + CONSTANTS.MAX_REQUEST_BYTES + " bytes");
+            //a nested object of the request is not a request of its own, so the rest of it is dropped up to its end
+            dropping = !skipping;
+            start = 0;
+            end = 0;
+            scanned = 0;
+        }
+    }
+
+    private void parse(Sink sink, int offset, int length) {
+        JsonStructure request;
+        try (JsonReader reader = readers.createReader(new ByteArrayInputStream(buffer, offset, length), StandardCharsets.UTF_8)) {
+            request = reader.read();
+        } catch (JsonException e) {
+            sink.invalid(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            return;
+        }
+        if (request instanceof JsonObject) {
+            sink.request((JsonObject) request);
+            return;
+        }
+        for (JsonValue batched : (JsonArray) request) {
+            if (batched instanceof JsonObject) {
+                sink.request((JsonObject) batched);
+            } else {
+                sink.invalid(batched.toString());
+            }
+        }
+    }
+
+    //moves the pending request to the front of the buffer, and grows the buffer if it is still full
+    private void makeRoom() {
+        if (end < buffer.length) {
+            return;
+        }
+        int keep = start < 0 ? scanned : start;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, end - keep);
+            end -= keep;
+            scanned -= keep;
+            if (start >= 0) {
+                start -= keep;
+            }
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.example;
+
+//data structures for the index
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Class for the full text index of one board, an inverted index from every word of a subject or content to the
+//messages that contain it. A message is indexed once, when it is durable, nothing is ever rebuilt.
+//Only the board's worker adds to it, searches run on any thread without locking: a posting list publishes its
+//size after the entries are written, the same way the MessageStore does.
+//A search walks the posting lists of the query's words together, newest first, and keeps the best matches in a
+//small heap of primitives. Every block of BLOCK entries knows its highest count, so whole blocks that cannot beat the
+//worst match kept so far are skipped, a common word does not cost a pass over every message that has it
+final class SearchIndex {
+    private static final int BLOCK_BITS = 7;
+    private static final int BLOCK = 1 << BLOCK_BITS;
+    private ConcurrentHashMap<String, Postings> postingsByWord = new ConcurrentHashMap<>();
+    private volatile int documents;
+    private int lastAdded = -1;
+    //only used by the worker while it adds a message: the lists it added to and the word being read
+    private Postings[] touched = new Postings[16];
+    private int touchedCount;
+    private char[] word = new char[32];
+    //the worker's own table of the same lists, looked up by the characters of the word being read,
+    //so a word the index already has costs no String (open addressing, at most half full)
+    private Postings[] byChars = new Postings[1024];
+    private int words;
+
+    //Class for the messages containing one word, in ID order, with how often the word is in each
+    private static final class Postings {
+        private final String word;
+        private final int hash;
+        private volatile int[] ids = new int[4];
+        private volatile int[] counts = new int[4];
+        //the highest count of every block of entries
+        private volatile int[] blockMax = new int[1];
+        private volatile int size;
+        //entries written but not published yet, while the message they belong to is being added
+        private int written;
+
+        Postings(String word, int hash) {
+            this.word = word;
+            this.hash = hash;
+        }
+
+        //only called by the board's worker, returns false if the message already has an entry it only counted up
+        boolean add(int id) {
+            if (written > size && ids[written - 1] == id) {
+                int count = ++counts[written - 1];
+                int block = (written - 1) >>> BLOCK_BITS;
+                if (count > blockMax[block]) {
+                    blockMax[block] = count;
+                }
+                return false;
+            }
+            if (written == ids.length) {
+                counts = Arrays.copyOf(counts, written * 2);
+                ids = Arrays.copyOf(ids, written * 2);
+            }
+            int block = written >>> BLOCK_BITS;
+            if (block == blockMax.length) {
+                blockMax = Arrays.copyOf(blockMax, block * 2);
+            }
+            ids[written] = id;
+            counts[written] = 1;
+            if (blockMax[block] < 1) {
+                blockMax[block] = 1;
+            }
+            written++;
+            return true;
+        }
+
+        void publish() {
+            size = written;
+        }
+    }
+
+    //only called by the board's worker, in ID order, the posting lists stay sorted that way
+    public void add(Message message) {
+        if (message.messageID <= lastAdded) {
+            return;//already indexed
+        }
+        lastAdded = message.messageID;
+        touchedCount = 0;
+        addWords(message.subject, message.messageID);
+        addWords(message.content, message.messageID);
+        for (int i = 0; i < touchedCount; i++) {
+            touched[i].publish();
+            touched[i] = null;
+        }
+        documents++;
+    }
+
+    private void addWords(String text, int id) {
+        if (text == null) {
+            return;
+        }
+        int length = 0;
+        int hash = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                c = Character.toLowerCase(c);
+                word[length++] = c;
+                hash = 31 * hash + c;
+            } else if (length > 0) {
+                Postings postings = postings(length, hash);
+                if (postings.add(id)) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = postings;
+                }
+                length = 0;
+                hash = 0;
+            }
+        }
+    }
+
+    //the list of the word being read, a new one if the index does not have the word yet
+    private Postings postings(int length, int hash) {
+        int slot = slot(hash, byChars.length);
+        for (Postings postings = byChars[slot]; postings != null; postings = byChars[slot]) {
+            if (postings.hash == hash && postings.word.length() == length && isWord(postings.word, length)) {
+                return postings;
+            }
+            slot = (slot + 1) & (byChars.length - 1);
+        }
+        String newWord = new String(word, 0, length);
+        Postings postings = new Postings(newWord, hash);
+        byChars[slot] = postings;
+        if (++words * 2 > byChars.length) {
+            Postings[] grown = new Postings[byChars.length * 2];
+            for (Postings old : byChars) {
+                if (old != null) {
+                    int to = slot(old.hash, grown.length);
+                    while (grown[to] != null) {
+                        to = (to + 1) & (grown.length - 1);
+                    }
+                    grown[to] = old;
+                }
+            }
+            byChars = grown;
+        }
+        postingsByWord.put(newWord, postings);
+        return postings;
+    }
+
+    private boolean isWord(String candidate, int length) {
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //spread like HashMap does, words that differ in their last characters are common
+    private static int slot(int hash, int tableLength) {
+        return (hash ^ (hash >>> 16)) & (tableLength - 1);
+    }
+
+    //The IDs of the best matches for the words of the query, best first. A message matches if it has any of the words,
+    //each word counts by how often it is in the message and how rare it is on the board (tf-idf), newer wins a tie
+    public int[] search(String query, int limit) {
+        int total = Math.max(1, documents);
+        List<String> queryWords = new ArrayList<>(new LinkedHashSet<>(words(query)));
+        int lists = 0;
+        int[][] ids = new int[queryWords.size()][];
+        int[][] counts = new int[queryWords.size()][];
+        int[][] blockMax = new int[queryWords.size()][];
+        double[] idf = new double[queryWords.size()];
+        //the entry every list is at, walking down from its newest
+        int[] at = new int[queryWords.size()];
+        for (String queryWord : queryWords) {
+            Postings postings = postingsByWord.get(queryWord);
+            if (postings == null) {
+                continue;
+            }
+            //size first, the arrays are at least that long once it is seen
+            int size = postings.size;
+            if (size == 0) {
+                continue;
+            }
+            ids[lists] = postings.ids;
+            counts[lists] = postings.counts;
+            blockMax[lists] = postings.blockMax;
+            idf[lists] = Math.log(1 + (double) total / size);
+            at[lists] = size - 1;
+            lists++;
+        }
+
+        TopMatches best = new TopMatches(limit);
+        while (true) {
+            //the newest message any list is still at, and the best score a message of the lists' current blocks can have
+            int candidate = -1;
+            int blockFloor = -1;
+            double bound = 0;
+            for (int i = 0; i < lists; i++) {
+                if (at[i] < 0) {
+                    continue;
+                }
+                candidate = Math.max(candidate, ids[i][at[i]]);
+                blockFloor = Math.max(blockFloor, ids[i][at[i] & ~(BLOCK - 1)]);
+                bound += blockMax[i][at[i] >>> BLOCK_BITS] * idf[i];
+            }
+            if (candidate < 0) {
+                break;
+            }
+            //everything kept so far is newer, so a message down to the highest block start that can at most tie
+            //the worst of them loses, skip to below that block start in every list
+            if (best.isFull() && bound <= best.worstScore()) {
+                for (int i = 0; i < lists; i++) {
+                    at[i] = below(ids[i], at[i], blockFloor);
+                }
+                continue;
+            }
+            double score = 0;
+            for (int i = 0; i < lists; i++) {
+                if (at[i] >= 0 && ids[i][at[i]] == candidate) {
+                    score += counts[i][at[i]] * idf[i];
+                    at[i]--;
+                }
+            }
+            best.offer(candidate, score);
+        }
+        return best.ranked();
+    }
+
+    //the last entry at or before from whose ID is below the floor, -1 if there is none
+    private static int below(int[] ids, int from, int floor) {
+        int low = 0;
+        int high = from;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] < floor) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    //Class for the best matches found so far, a heap with the worst on top, in parallel arrays
+    private static final class TopMatches {
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        TopMatches(int limit) {
+            ids = new int[limit];
+            scores = new double[limit];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        double worstScore() {
+            return scores[0];
+        }
+
+        //matches are offered newest first, so one that only ties the worst never replaces it
+        void offer(int id, double score) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                up(size++);
+            } else if (score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                down(0);
+            }
+        }
+
+        //best first
+        int[] ranked() {
+            int[] ranked = new int[size];
+            while (size > 0) {
+                ranked[size - 1] = ids[0];
+                size--;
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                down(0);
+            }
+            return ranked;
+        }
+
+        private boolean worse(int a, int b) {
+            return scores[a] < scores[b] || (scores[a] == scores[b] && ids[a] < ids[b]);
+        }
+
+        private void up(int i) {
+            while (i > 0 && worse(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                if (left < size && worse(left, worst)) {
+                    worst = left;
+                }
+                if (left + 1 < size && worse(left + 1, worst)) {
+                    worst = left + 1;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    //lower case runs of letters and digits, the same words add() reads
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example;
+
+//data structures for the counters
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+//Class for the server wide metrics, recorded by the ingress queue, the task threads and the connection writers,
+//and read by the stats request. Per action latencies are kept by the ActionRegistry and per connection counts by
+//the Profiles, this only holds what belongs to no single action or connection
+final class ServerMetrics {
+    private static final JsonBuilderFactory builders = Json.createBuilderFactory(null);
+    //from a request being queued to the dispatcher taking it off the ingress queue
+    static final ConcurrentHistogram queueWait = new ConcurrentHistogram();
+    //the most tasks that were waiting in the ingress queue at once
+    static final AtomicLong peakQueued = new AtomicLong();
+    //requests refused with a retry-after
+    static final LongAdder throttled = new LongAdder();
+    //encoding the notification and queueing it for every recipient
+    static final ConcurrentHistogram publicFanOut = new ConcurrentHistogram();
+    static final ConcurrentHistogram privateFanOut = new ConcurrentHistogram();
+    static final LongAdder fanOutRecipients = new LongAdder();
+    //written to every connection since the server started, including the ones that are gone
+    static final LongAdder framesWritten = new LongAdder();
+    static final LongAdder bytesWritten = new LongAdder();
+
+    private ServerMetrics() {
+    }
+
+    //only called with the ingress queue's lock held
+    static void queued(int depth) {
+        if (depth > peakQueued.get()) {
+            peakQueued.set(depth);
+        }
+    }
+
+    static void wrote(Profile profile, long bytes, boolean frameDone) {
+        profile.wrote(bytes, frameDone);
+        bytesWritten.add(bytes);
+        if (frameDone) {
+            framesWritten.increment();
+        }
+    }
+
+    //Everything at once, for the stats request. Durations are in microseconds
+    static JsonObject snapshot(IngressQueue taskQueue) {
+        JsonObjectBuilder actions = builders.createObjectBuilder();
+        //sorted so two snapshots are easy to compare, actions nobody sent yet are left out
+        for (Map.Entry<String, ActionStats> entry : new TreeMap<>(ActionRegistry.getStats()).entrySet()) {
+            ActionStats stats = entry.getValue();
+            if (stats.getInvocations() == 0) {
+                continue;
+            }
+            actions.add(entry.getKey(), stats.getLatency().toJson(builders)
+                    .add("failures", stats.getFailures())
+                    .add("totalMicros", TimeUnit.NANOSECONDS.toMicros(stats.getTotalNanos())));
+        }
+
+        JsonArrayBuilder connections = builders.createArrayBuilder();
+        for (Profile profile : Server.getActiveUsers().values()) {
+            JsonObjectBuilder connection = builders.createObjectBuilder()
+                    .add("session", profile.getSessionId())
+                    .add("framesWritten", profile.getFramesWritten())
+                    .add("bytesWritten", profile.getBytesWritten())
+                    .add("outboundLag", profile.getOutboundLag())
+                    .add("droppedFrames", profile.getDroppedFrames())
+                    .add("lagging", profile.isLagging());
+            if (profile.getUserName() != null) {
+                connection.add("username", profile.getUserName());
+            }
+            connections.add(connection);
+        }
+
+        JsonObjectBuilder logging = builders.createObjectBuilder();
+        AsyncLogHandler logHandler = Server.getLogHandler();
+        if (logHandler != null) {
+            logging.add("queued", logHandler.getQueued()).add("dropped", logHandler.getDropped());
+        }
+
+        return builders.createObjectBuilder()
+                .add("uptimeSeconds", TimeUnit.MILLISECONDS.toSeconds(ManagementFactory.getRuntimeMXBean().getUptime()))
+                .add("queue", builders.createObjectBuilder()
+                        .add("depth", taskQueue.size())
+                        .add("peak", peakQueued.get())
+                        .add("throttled", throttled.sum())
+                        .add("wait", queueWait.toJson(builders)))
+                .add("actions", actions)
+                .add("fanOut", builders.createObjectBuilder()
+                        .add("public", publicFanOut.toJson(builders))
+                        .add("private", privateFanOut.toJson(builders))
+                        .add("recipients", fanOutRecipients.sum()))
+                .add("output", builders.createObjectBuilder()
+                        .add("frames", framesWritten.sum())
+                        .add("bytes", bytesWritten.sum()))
+                .add("logging", logging)
+                .add("connections", connections)
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example;
+
+//data structures for the tokens and the timers
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+//logging package
+import java.util.logging.Logger;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonObject;
+
+//Class for the resume tokens. A client that joined gets a token, and when its connection drops the session is
+//suspended instead of removed: it stays on the boards and in its groups, its Profile keeps the notifications it
+//misses, and nobody is told it left. If a new connection sends the token within the grace period it takes the
+//session over, otherwise the grace period ends with the usual ServerRemove. Flapping clients then cost one resume
+//instead of a leave and a join broadcast to everyone each time
+final class SessionResumption {
+    private static final Logger logger = Logger.getLogger(SessionResumption.class.getName());
+    private static final SecureRandom random = new SecureRandom();
+    private final int graceSeconds;
+    private final IngressQueue taskQueue;
+    private final ConcurrentHashMap<String, Long> sessionsByToken = new ConcurrentHashMap<>();
+    private final LongConcurrentMap<String> tokensBySession = new LongConcurrentMap<>();
+    //the suspended sessions and the timers that end their grace period
+    private final LongConcurrentMap<ScheduledFuture<?>> suspended = new LongConcurrentMap<>();
+    private final ScheduledExecutorService timers;
+
+    //a grace period of 0 turns resuming off, every disconnect removes the session straight away
+    public SessionResumption(int graceSeconds, IngressQueue taskQueue) {
+        this.graceSeconds = graceSeconds;
+        this.taskQueue = taskQueue;
+        this.timers = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return graceSeconds > 0;
+    }
+
+    public int getGraceSeconds() {
+        return graceSeconds;
+    }
+
+    //A new token for the session, the one it had before no longer works
+    public String issue(long sessionId) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessionsByToken.put(token, sessionId);
+        String old = tokensBySession.put(sessionId, token);
+        if (old != null) {
+            sessionsByToken.remove(old);
+        }
+        return token;
+    }
+
+    //The session left or is gone for good, its token no longer works
+    public void revoke(long sessionId) {
+        String token = tokensBySession.remove(sessionId);
+        if (token != null) {
+            sessionsByToken.remove(token);
+        }
+        ScheduledFuture<?> expiry = suspended.remove(sessionId);
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+    }
+
+    //Starts the grace period of a session whose connection dropped, false if it cannot be resumed
+    public boolean suspend(long sessionId) {
+        if (!isEnabled() || !tokensBySession.containsKey(sessionId)) {
+            return false;
+        }
+        ScheduledFuture<?> expiry = timers.schedule(() -> expire(sessionId), graceSeconds, TimeUnit.SECONDS);
+        suspended.put(sessionId, expiry);
+        return true;
+    }
+
+    //The suspended session the token belongs to, or 0 if there is none, e.g. because the grace period ended.
+    //A token of a session that is still connected is left alone, once claimed it is used up and the resumed
+    //session gets a new one
+    public long claim(String token) {
+        Long sessionId = sessionsByToken.get(token);
+        if (sessionId == null) {
+            return 0;
+        }
+        //the expiry timer takes the session out of this map as well, only one of them gets it
+        ScheduledFuture<?> expiry = suspended.remove(sessionId);
+        if (expiry == null) {
+            return 0;
+        }
+        expiry.cancel(false);
+        sessionsByToken.remove(token);
+        tokensBySession.remove(sessionId);
+        return sessionId;
+    }
+
+    //the grace period is over, the session is removed like any other disconnected one, on the task threads
+    private void expire(long sessionId) {
+        if (suspended.remove(sessionId) == null) {
+            return;//resumed just now
+        }
+        String token = tokensBySession.remove(sessionId);
+        if (token != null) {
+            sessionsByToken.remove(token);
+        }
+        logger.info("[Client " + sessionId + "] Not resumed within " + graceSeconds + " s, removing the session.");
+        JsonObject removeJson = Json.createObjectBuilder()
+                .add("type", "ServerRemove")
+                .add("action", "ServerRemove")
+                .add("expired", true)
+                .build();
+        taskQueue.putLast(new Task(sessionId, removeJson));
+    }
+}
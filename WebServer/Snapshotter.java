@@ -0,0 +1,75 @@
+package com.example;
+
+//file packages
+import java.io.IOException;
+
+//logging package
+import java.util.logging.Logger;
+
+//Class for the thread that snapshots the boards every so often, so a restart loads one snapshot and the short
+//journal tail after it instead of replaying every post ever made. The task threads keep running the whole time:
+//the journal is rolled to a new segment first, everything before it is already on the boards, and only that part
+//of each board is written out, the segments it came from are deleted afterwards
+final class Snapshotter implements Runnable {
+    private static final Logger logger = Logger.getLogger(Snapshotter.class.getName());
+    private MessageJournal journal;
+    private MessageBoard messageBoard;
+    private PrivateMessageBoard[] privateGroups;
+    private long intervalMillis;
+    private long recordsAtLastSnapshot = -1;
+
+    public Snapshotter(MessageJournal journal, MessageBoard messageBoard, PrivateMessageBoard[] privateGroups, int intervalSeconds) {
+        this.journal = journal;
+        this.messageBoard = messageBoard;
+        this.privateGroups = privateGroups;
+        this.intervalMillis = intervalSeconds * 1000L;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                long records = journal.getRecordCount();
+                if (records == recordsAtLastSnapshot) {
+                    continue;//nothing new since the last one
+                }
+                if (snapshot()) {
+                    recordsAtLastSnapshot = records;
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Snapshot thread interrupted");
+        } catch (IOException e) {
+            //the journal is left as it was, it still has everything
+            logger.severe("Snapshots stopped: " + e.getMessage());
+        }
+    }
+
+    //false if the snapshot had to be abandoned, it is tried again at the next interval
+    public boolean snapshot() throws InterruptedException, IOException {
+        long started = System.currentTimeMillis();
+        long firstSegment = journal.roll();
+        MessageJournal.SnapshotWriter snapshot = journal.startSnapshot();
+        MessageBoard.SnapshotMoves[] moves = new MessageBoard.SnapshotMoves[privateGroups.length + 1];
+        try {
+            moves[0] = messageBoard.snapshotTo(TaskDispatcher.PUBLIC_BOARD, snapshot, firstSegment);
+            for (int i = 0; i < privateGroups.length; i++) {
+                moves[i + 1] = privateGroups[i].snapshotTo(i + 1, snapshot, firstSegment);
+            }
+        } catch (IOException e) {
+            //nothing points at the snapshot yet, the segments stay until a later snapshot can copy every message
+            snapshot.abandon();
+            logger.warning("Snapshot abandoned, the journal is kept as it is: " + e.getMessage());
+            return false;
+        }
+        int written = 0;
+        for (MessageBoard.SnapshotMoves boardMoves : moves) {
+            boardMoves.apply();
+            written += boardMoves.size();
+        }
+        journal.checkpoint(firstSegment, snapshot);
+        logger.info("Snapshot of " + written + " new messages taken in " + (System.currentTimeMillis() - started) + " ms, journal starts at segment " + firstSegment);
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example;
+
+//json packages
+import javax.json.JsonObject;
+
+//Class for the tasks, that the task thread will process, needs to store the session id of the connected client, for in/out streams
+//A task can also be the continuation of an earlier one, i.e. the rest of a post once it is in the journal
+final class Task {
+    private long sessionId;
+    private JsonObject request;
+    private Runnable continuation;
+    //set while the task waits on the journal, the client's next task is held back until the continuation ran
+    private volatile boolean deferred;
+    //cleared once the client's next task no longer waits for this one, see defer
+    private volatile boolean holdsChain = true;
+    //System.nanoTime() when it went into the ingress queue, for the queue wait in the stats
+    private long queuedAt;
+
+    public Task(long sessionId, JsonObject request) {
+        this.sessionId = sessionId;
+        this.request = request;
+    }
+
+    public Task(long sessionId, JsonObject request, Runnable continuation) {
+        this(sessionId, request);
+        this.continuation = continuation;
+    }
+
+    //getters and setters - cont.
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public JsonObject getJsonObject() {
+        return request;
+    }
+
+    public Runnable getContinuation() {
+        return continuation;
+    }
+
+    //A pipelined task only holds the client's next task back until its worker is done with it, the response that
+    //waits on the journal goes out whenever it is ready
+    public void defer() {
+        deferred = true;
+        if (isPipelined()) {
+            holdsChain = false;
+        }
+    }
+
+    public boolean holdsChain() {
+        return holdsChain;
+    }
+
+    //for the continuation of a task that already let the client's next task through
+    public void releaseChain() {
+        holdsChain = false;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
+    //a request with a requestID is pipelined: it is still handled after the client's earlier requests, but the
+    //client's next request does not wait for its journal write, and its responses carry the requestID so the client
+    //can match them up when they arrive out of order
+    public boolean isPipelined() {
+        return request.containsKey("requestID");
+    }
+}
@@ -0,0 +1,181 @@
+package com.example;
+
+//data structures used to route the tasks to the workers
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+//json packages
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+//Class for the dispatcher, takes every task off the shared task queue and hands it to the TaskThread that owns
+//the board the task touches. Each board always goes to the same worker so its tasks keep their order, and a client
+//only has one task running at a time so its requests keep their order even when they touch different boards.
+//Pipelined tasks (the ones with a requestID) keep the per client order as well, they only let the client's next task
+//through before their journal write is done, so their responses can come out of order.
+//Only so many tasks are handed on at a time, the rest wait in the ingress queue where every client gets its turn
+final class TaskDispatcher implements Runnable {
+    //the board key of the public message board, private group i has key i + 1
+    public static final int PUBLIC_BOARD = 0;
+
+    private IngressQueue taskQueue;
+    private BlockingQueue<Task>[] workerQueues;
+    private int privateGroupCount;
+    //the tasks waiting behind the running one, for every client with a task in flight
+    private LongConcurrentMap<ClientChain> chains = new LongConcurrentMap<>();
+    //one permit per task taken off the ingress queue and not completed yet
+    private Semaphore dispatched;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TaskDispatcher(IngressQueue taskQueue, int workerCount, MessageBoard messageBoard, PrivateMessageBoard[] privateGroups,
+            GroupMembership groupMembership, MessageJournal journal) {
+        this.taskQueue = taskQueue;
+        this.privateGroupCount = privateGroups.length;
+        this.workerQueues = new BlockingQueue[workerCount];
+        this.dispatched = new Semaphore(CONSTANTS.MAX_DISPATCHED_PER_WORKER * workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workerQueues[i] = new LinkedBlockingQueue<>();
+            Thread worker = new Thread(new TaskThread(workerQueues[i], messageBoard, privateGroups, groupMembership, journal, this), "task-worker-" + i);
+            worker.start();
+        }
+    }
+
+    //The running functionality of the thread
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                dispatched.acquire();
+                Task task = taskQueue.take();
+                ClientChain chain = chains.computeIfAbsent(task.getSessionId(), id -> new ClientChain());
+                if (chain.offer(task)) {
+                    route(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Dispatcher thread interrupted");
+        }
+    }
+
+    //Called by a TaskThread once it is done with a task, starts the next task of the same client if there is one
+    public void complete(Task task) {
+        //a deferred task completes through its continuation, so this runs once for every task that was taken
+        dispatched.release();
+        if (task.holdsChain()) {
+            next(task);
+        }
+    }
+
+    //Called by a TaskThread once it is done with a deferred pipelined task, the client's next task can go while the
+    //journal write is still pending, the permit is only given back by the continuation
+    public void released(Task task) {
+        next(task);
+    }
+
+    private void next(Task task) {
+        long sessionId = task.getSessionId();
+        ClientChain chain = chains.get(sessionId);
+        if (chain == null) {
+            return;
+        }
+        Task next = chain.next();
+        if (next != null) {
+            route(next);
+        } else if ("ServerRemove".equals(type(task))) {
+            //the client is gone, nothing else can arrive for it
+            chains.remove(sessionId, chain);
+        }
+    }
+
+    //Called once a deferred task can go on, the continuation runs on the worker that owns the task's board
+    //and completing it lets the client's next task through
+    public void resume(Task task, Runnable continuation) {
+        Task resumed = new Task(task.getSessionId(), task.getJsonObject(), continuation);
+        if (!task.holdsChain()) {
+            resumed.releaseChain();//the client's next task went already
+        }
+        route(resumed);
+    }
+
+    private void route(Task task) {
+        int board = boardOf(task.getJsonObject());
+        //tasks that touch no board are spread by client
+        int worker = board >= 0 ? board % workerQueues.length : Math.floorMod(task.getSessionId(), workerQueues.length);
+        workerQueues[worker].add(task);
+    }
+
+    //Works out which board a request touches, -1 if it touches none
+    //leave and ServerRemove also take the user out of the private groups, which the boards synchronize themselves,
+    //and resume moves the user's groups over to the new connection
+    private int boardOf(JsonObject request) {
+        String action = request.get("action") instanceof JsonString ? request.getString("action") : null;
+        if (action == null) {
+            return -1;
+        }
+        switch (action) {
+            case "join":
+            case "leave":
+            case "postMessage":
+            case "getMessage":
+            case "getMessages":
+            case "getUsers":
+            case "ServerRemove":
+            case "resume":
+                return PUBLIC_BOARD;
+            case "groupJoin":
+            case "groupPostMessage":
+            case "getGroupUsers":
+            case "groupLeave":
+            case "getGroupMessage":
+            case "getGroupMessages":
+                JsonValue groupID = request.get("groupID");
+                if (groupID instanceof JsonNumber) {
+                    int id = ((JsonNumber) groupID).intValue();
+                    if (id >= 0 && id < privateGroupCount) {
+                        return id + 1;
+                    }
+                }
+                //invalid groups are rejected without touching a board
+                return -1;
+            case "search":
+                //the search index is read without locking, so searches are spread by client instead of
+                //queueing up behind the posts on the board's worker
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static String type(Task task) {
+        JsonValue type = task.getJsonObject().get("type");
+        return type instanceof JsonString ? ((JsonString) type).getString() : null;
+    }
+
+    //Class for the per client ordering, only one task of a client is with the workers at any time
+    private static final class ClientChain {
+        private final ArrayDeque<Task> waiting = new ArrayDeque<>();
+        private boolean running;
+
+        //returns true if the task can be routed now, otherwise it waits for the running one
+        synchronized boolean offer(Task task) {
+            if (running) {
+                waiting.add(task);
+                return false;
+            }
+            running = true;
+            return true;
+        }
+
+        synchronized Task next() {
+            Task next = waiting.poll();
+            if (next == null) {
+                running = false;
+            }
+            return next;
+        }
+    }
+}
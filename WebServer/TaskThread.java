@@ -0,0 +1,1303 @@
+package com.example;
+
+//time package
+import java.time.LocalDate;
+
+//data structures we use for our data storage
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+//logging package
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+class TaskThread implements Runnable {
+    private BlockingQueue<Task> taskQueue;
+    //logger for better output on what this thread is acchomplishing
+    private static final Logger logger = Logger.getLogger(TaskThread.class.getName());
+    private MessageBoard messageBoard;
+    private PrivateMessageBoard[] privateGroups;
+    private GroupMembership groupMembership;
+    //null when the server runs without a journal
+    private MessageJournal journal;
+    private TaskDispatcher dispatcher;
+    //the handlers for every action a client can send, and for the server's own ServerWelcome and ServerRemove
+    private ActionRegistry clientActions = new ActionRegistry();
+    private ActionRegistry serverActions = new ActionRegistry();
+
+    //Constructor, basically we set all of our data structures to what the server gives us - THIS IS SHARED DATA
+    //the task queue is this worker's own, the dispatcher fills it with the tasks for the boards this worker owns
+    public TaskThread(BlockingQueue<Task> taskQueue, MessageBoard messageBoard, PrivateMessageBoard[] privateGroups,
+            GroupMembership groupMembership, MessageJournal journal, TaskDispatcher dispatcher) {
+        this.taskQueue = taskQueue;
+        this.messageBoard = messageBoard;
+        this.privateGroups = privateGroups;
+        this.groupMembership = groupMembership;
+        this.journal = journal;
+        this.dispatcher = dispatcher;
+
+        serverActions.register("ServerWelcome", this::welcome);
+        serverActions.register("ServerRemove", this::remove);
+        clientActions.register("help", this::help);
+        clientActions.register("setFraming", this::setFraming);
+        clientActions.register("join", this::join);
+        clientActions.register("leave", this::leave);
+        clientActions.register("postMessage", this::postMessage);
+        clientActions.register("getMessage", this::getMessage);
+        clientActions.register("getMessages", this::getMessages);
+        clientActions.register("getUsers", this::getUsers);
+        clientActions.register("getGroups", this::getGroups);
+        clientActions.register("stats", this::stats);
+        clientActions.register("resume", this::resume);
+        clientActions.register("search", this::search);
+        clientActions.register("groupJoin", this::groupJoin);
+        clientActions.register("groupPostMessage", this::groupPostMessage);
+        clientActions.register("getGroupUsers", this::getGroupUsers);
+        clientActions.register("groupLeave", this::groupLeave);
+        clientActions.register("getGroupMessage", this::getGroupMessage);
+        clientActions.register("getGroupMessages", this::getGroupMessages);
+    }
+
+    //The running functionality of the thread
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                // Take a task from the queue (blocking call, waits if queue is empty)
+                Task task = taskQueue.take();
+
+                // Process the task
+                try {
+                    if (task.getContinuation() != null) {
+                        // Finish a task that was waiting on the journal
+                        task.getContinuation().run();
+                    } else {
+                        // Process the request for the client socket
+                        processTask(task);
+                    }
+
+                } catch (Exception e){
+                    logger.severe("UNIDENTIFIED EXCEPTION OCCURRED, MOVING TO OTHER TASK" + e.getMessage());
+                } finally {
+                    // Let the client's next task through, unless this one still waits on the journal
+                    if (!task.isDeferred()) {
+                        dispatcher.complete(task);
+                    } else if (!task.holdsChain()) {
+                        dispatcher.released(task);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Notification thread interrupted");
+        }
+    }
+
+    //Runs then once the message is in the journal, back on the worker that owns the board
+    //the task is deferred until then, so the client's next request waits for the affirm, unless it is pipelined.
+    //If the journal fails the message is taken off the board again and the poster gets a deny instead
+    private void whenDurable(RequestContext request, int board, MessageBoard messages, Message message, Runnable then) {
+        if (journal == null) {
+            then.run();
+            return;
+        }
+        Task task = request.task;
+        task.defer();
+        journal.append(board, message, () -> dispatcher.resume(task, then), () -> dispatcher.resume(task, () -> {
+            messages.deleteMessage(message.messageID);
+            sendErrorJsonResponse(request.profile, request.json, "The message could not be saved, the server's journal failed.");
+        }));
+    }
+
+    //Send a json response regarding an error that occured in the received json package,a server deny with the error message
+    private void sendErrorJsonResponse(Profile out, JsonObject jsonObject, String error) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("JSON Error: " + error);
+        }
+        // violates protocol
+        JsonObject responseJson = Json.createObjectBuilder().build();
+        responseJson = Json.createObjectBuilder(responseJson)
+                .add("type", "ServerDeny")
+                .add("data-type", "text")
+                .add("data", error)
+                .add("receivedData", jsonObject)
+                .build();
+
+        // Convert the response JSON to string and send it
+        String jsonResponse = withRequestID(responseJson).toString();
+        out.send(jsonResponse);
+        if (PayloadSampler.sample(logger)) {
+            logger.info("Sent response: " + jsonResponse);
+        }
+    }
+
+    //only queues the response, the client's writer sends it
+    private void sendJsonResponse(Profile out, JsonObject jsonObject) {
+        String jsonResponse = withRequestID(jsonObject).toString();
+        out.send(jsonResponse);
+        if (PayloadSampler.sample(logger)) {
+            logger.info("Sent response: " + jsonResponse);
+        }
+    }
+
+    //copies the requestID of the request the response is for to the top of the response, so pipelined responses can be matched
+    private static JsonObject withRequestID(JsonObject response) {
+        JsonValue received = response.get("receivedData");
+        if (!(received instanceof JsonObject) || !((JsonObject) received).containsKey("requestID")) {
+            return response;
+        }
+        return Json.createObjectBuilder(response).add("requestID", ((JsonObject) received).get("requestID")).build();
+    }
+
+    private void processTask(Task task) {
+        // Get the session id associated with this task
+        long sessionId = task.getSessionId();
+
+        //get the output streams and json package associated with the User/profile
+        Profile User = Server.getUserProfile(sessionId);
+        //check if the user is still connected - cannot perform operations for a disconnected user
+        if (User == null) {
+            return;
+        }
+        Profile out = User;
+        JsonObject jsonObject = task.getJsonObject();
+
+        // Error Cases
+        // Empty JSON object Error
+        if (jsonObject.isEmpty()) {
+            sendErrorJsonResponse(out, jsonObject, "Empty JSON object");
+            return;
+        }
+        // JSON object lacking type key Error
+        if (!jsonObject.containsKey("type")) {
+            sendErrorJsonResponse(out, jsonObject, "Request missing key 'type'");
+            return;
+        }
+        // JSON object lacking action key Error
+        if (!jsonObject.containsKey("action")) {
+            sendErrorJsonResponse(out, jsonObject, "Request missing key 'action'");
+            return;
+        }
+
+        //Get the provided arguments for type and action, then hand the request to the handler for it
+        String type = jsonObject.getString("type");
+        String action = jsonObject.getString("action");
+        RequestContext request = new RequestContext(task, sessionId, User, jsonObject, User.getUserName());
+        if ("clientRequest".equals(type)) {//all client requests / commands are handled by the action's handler
+            if (!clientActions.dispatch(action, request)) {
+                // Handles the situation in which the action is invalid
+                // The action should match one of the possible actions for the client
+                String errorMessage = "Invalid request action. The received action was " + action
+                        + " which is invalid.";
+                sendErrorJsonResponse(out, jsonObject, errorMessage);
+            }
+        } else if (!serverActions.dispatch(type, request)) {//ServerWelcome and ServerRemove are server side only
+            // Request type is neither a clientRequest nor one of the server's own
+            String errorMessage = "Invalid request type. The received type was " + type + " which is invalid.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+        }
+    }
+
+    //this is server side only, client will not provide this, this is in case of a disconnect
+    private void welcome(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+
+        logger.fine("Welcoming new user to server, providing help and start commands");
+
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        arrayBuilder.add("Welcome to the Server: Please Join The Public Group by inputting join followed by your choice of username");
+        arrayBuilder.add("For info on all other commands, enter help");
+
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Welcome")
+                .add("data", arrayBuilder)
+                .add("receivedData", jsonObject)
+                .build();
+        //send the welcome message
+        sendJsonResponse(out, responseJson);
+
+        //Show user private groups
+        JsonArrayBuilder arrayBuilder2 = Json.createArrayBuilder();
+
+        // Add each group to the JSON array
+        for (PrivateMessageBoard pg : privateGroups) {
+            String showcase = "Group Name: " + pg.getGroupName() + " - ID:" + pg.getGroupId();
+            arrayBuilder2.add(showcase);
+        }
+        JsonObject responseJson2;
+
+        responseJson2 = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Groups")
+                .add("data", arrayBuilder2)
+                .add("receivedData", jsonObject)
+                .build();
+
+        //send the json with the private groups 
+        sendJsonResponse(out, responseJson2);
+    }
+
+    //this is server side only, client will not provide this
+    private void remove(RequestContext request) {
+        long sessionId = request.sessionId;
+        Profile User = request.profile;
+        String username = request.username;
+        SessionResumption resumption = Server.getResumption();
+
+        //a joined client keeps its session for the grace period, unless this is the end of that grace period
+        if (username != null && User.isResumable() && !request.json.containsKey("expired")
+                && resumption != null && resumption.suspend(sessionId)) {
+            logger.info("[Client " + sessionId + "] Connection dropped, " + username + " can resume for "
+                    + resumption.getGraceSeconds() + " s.");
+            return;//still on the boards and in its groups, nobody is told it left
+        }
+        User.setResumable(false);
+        if (resumption != null) {
+            resumption.revoke(sessionId);
+        }
+
+        //the connection is already closed, the profile is only kept until now so we still know the username
+        if (username != null) {
+            // Notify all users //This needs to be done before we remove the user
+            Message blankM = new Message();
+            notifyAllUsers(false, blankM, username + " has left the message board");
+
+            //Take the user out of the private groups it is in, the index knows which ones
+            Set<Integer> whichGroupsUserIn = groupMembership.leaveAll(sessionId);
+            //notify the private groups as well
+            notifyAllPrivateUsers(whichGroupsUserIn, false, blankM, username + " has left the private message board: ");
+
+            // Remove the user from the private message groups and the public message board and nullify the socket's username
+            // profile
+            for(int groupID : whichGroupsUserIn){
+                privateGroups[groupID].removeUser(username);
+            }
+            messageBoard.removeUser(username);
+            User.setUsername(null);
+        }
+        Server.removeUserProfile(sessionId);
+        //no serveraffirm as user disconnected
+    }
+
+    private void help(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+
+        //provide list of commands
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        arrayBuilder.add("Command [param1] [param2, etc] - Info on Command");
+        arrayBuilder.add("join [username] - Lets you join the public group with a specified unique username");
+        arrayBuilder.add("post [messageSubject(no spaces)] [content(spaces allowed)] - Lets you post a message to the public group");
+        arrayBuilder.add("users - Lets you see a list of users in the public group");
+        arrayBuilder.add("leave - Lets you leave the public group, which will also kick you from any private groups as well");
+        arrayBuilder.add("message [messageID] - Lets you retrieve the content of a message with a given MessageID");
+        arrayBuilder.add("messages [cursor] - Lets you page through the public messages, newest first, starting before the cursor messageID if given");
+        arrayBuilder.add("search [words(spaces allowed)] - Lets you find the public messages that best match the words, by subject and content");
+        arrayBuilder.add("exit - Lets you disconnect from the server entirely");
+        arrayBuilder.add("groups - Lets you see a list of private groups, provided you are in the public group");
+        arrayBuilder.add("grouppost [groupID] [messageSubject(no spaces)] [content(spaces allowed)] - Lets you post a message to the private group specified with the groupID, with the provided subject and content, given that the user is in the private group");
+        arrayBuilder.add("groupjoin [groupID] - Lets you join a private group with the specified groupID");
+        arrayBuilder.add("groupusers [groupID] - Lets you see the list of users from a private group with the specified groupID, provided you are in the private group");
+        arrayBuilder.add("groupleave [groupID] - Lets you leave a private group with the specified groupID, provided you are in the private group");
+        arrayBuilder.add("groupmessage [groupID] [messageID] - Lets you see the content of a private group message from a private group with the specified groupID and messageID, provided you are in the private group");
+        arrayBuilder.add("groupsearch [groupID] [words(spaces allowed)] - Lets you find the messages of a private group that best match the words, provided you are in the private group");
+        arrayBuilder.add("resume - Lets you continue your session after your connection dropped, within the grace period, with the groups you were in and the notifications you missed");
+        arrayBuilder.add("stats - Lets you see the server's metrics, only from the machine the server runs on");
+        arrayBuilder.add("groupmessages [groupID] [cursor] - Lets you page through the messages of a private group, newest first, starting before the cursor messageID if given, provided you are in the private group");
+
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Commands")
+                .add("data", arrayBuilder)
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void setFraming(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+
+        //switches how the frames to this client are delimited, the affirm itself still uses the old framing
+        String framing = jsonObject.get("framing") instanceof JsonString ? jsonObject.getString("framing") : "";
+        if (!"length".equals(framing) && !"newline".equals(framing)) {
+            String errorMessage = "The key 'framing' must be either length or newline";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", "Frames are now " + framing + " delimited")
+                .add("receivedData", jsonObject)
+                .build();
+        out.send(new OutboundFrame(withRequestID(responseJson)).thenSwitchTo(
+                "length".equals(framing) ? OutboundFrame.LENGTH_FRAMING : OutboundFrame.NEWLINE_FRAMING));
+    }
+
+    private void join(RequestContext request) {
+        Profile User = request.profile;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        // Handles the client join functionality
+
+        logger.fine("Performing join operation.");
+        // The request must include a username, otherwise throw an error
+        if (!jsonObject.containsKey("username")) {
+            String errorMessage = "In order to perform join command, you must include key 'username' in request.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //user provided a username
+        username = jsonObject.getString("username");
+        // Adding the user only succeeds if the username is not taken yet,
+        // otherwise throw an error
+        if (messageBoard.addUser(username)) {
+
+            User.setUsername(username);
+            //this will be sent over
+            JsonObjectBuilder joined = Json.createObjectBuilder()
+                    .add("type", "ServerAffirm")
+                    .add("data-type", "text")
+                    .add("data", username + " successfully joined the message board.")
+                    .add("receivedData", jsonObject);
+            //the token lets a new connection take the session over if this one drops
+            SessionResumption resumption = Server.getResumption();
+            if (resumption != null && resumption.isEnabled()) {
+                joined.add("resume-token", resumption.issue(request.sessionId));
+                User.setResumable(true);
+            }
+            responseJson = joined.build();
+
+        } else {
+            String errorMessage = "In order to perform join command, you must join with a unique username.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        /*
+         * Here we need to add functionality to notify all other users of the new user
+         * We also need to show the new user to that 2 latest messages
+         * We also need to show the new user the list of active users
+         */
+        Message blankM = new Message();
+        notifyAllUsers(false, blankM , username + " has entered the message board");
+
+        //get last 2 messages to show user
+        Message[] last2 = messageBoard.getLast2();
+
+        if(last2[0] != null){
+            // Send message to client
+            JsonObject messageJson1 = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "message")
+            .add("group", "Public")
+            .add("message-id", last2[0].messageID)
+            .add("sender", last2[0].sender)
+            .add("post-date", last2[0].postDate)
+            .add("message-subject", last2[0].subject)
+            .add("data", last2[0].content)
+            .build();
+            sendJsonResponse(User, messageJson1);
+        }
+        if(last2[1]!=null){
+            // Send message to client
+            JsonObject messageJson2 = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "message")
+            .add("group", "Public")
+            .add("message-id", last2[1].messageID)
+            .add("sender", last2[1].sender)
+            .add("post-date", last2[1].postDate)
+            .add("message-subject", last2[1].subject)
+            .add("data", last2[1].content)
+            .build();
+            sendJsonResponse(User, messageJson2);
+        }
+
+        //get all users for the new client
+        String[] allUsers = messageBoard.getAllUsers();
+
+        // Convert String[] to JsonArray using JsonArrayBuilder
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        for (String user : allUsers) {
+            if (user == null) {
+                break;
+            }
+            arrayBuilder.add(user);
+        }
+
+        JsonObject usersJson = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "list")
+            .add("data-title", "Users")
+            .add("data", arrayBuilder.build())
+            .build();
+            sendJsonResponse(User, usersJson);
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void leave(RequestContext request) {
+        long sessionId = request.sessionId;
+        Profile User = request.profile;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        if (username == null) { // handle a user trying to leave when they aren't in the group anyway
+            logger.info("This client is not in the message group: Leave Operation invalid");
+            String errorMessage = "In order to perform leave command, user must first be in message Board";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        // Handles the client leave public group functionality
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Performing Leave Operation for user:" + username);
+        }
+
+        // Construct message for client
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", username + " successfully left the message board.")
+                .add("receivedData", jsonObject)
+                .build();
+
+        // Notify all users //This needs to be done before we remove the user
+        Message blankM = new Message();
+        notifyAllUsers(false, blankM, username + " has left the message board");
+
+        //Get List of Private Groups user is in, copied as the user is still notified before being removed
+        ArrayList<Integer> whichGroupsUserIn = new ArrayList<Integer>(groupMembership.getGroups(sessionId));
+        notifyAllPrivateUsers(whichGroupsUserIn, false, blankM, username + " has left the private message board: ");
+        // Remove the user from the private message groups and the public message board and nullify the socket's username
+        // profile
+        groupMembership.leaveAll(sessionId);
+        for(int groupID : whichGroupsUserIn){
+            privateGroups[groupID].removeUser(username);
+        }
+        // Remove user, a session that left cannot be resumed
+        messageBoard.removeUser(username);
+        User.setUsername(null);
+        User.setResumable(false);
+        if (Server.getResumption() != null) {
+            Server.getResumption().revoke(sessionId);
+        }
+        sendJsonResponse(out, responseJson);
+    }
+
+    //Handles post Message request
+    private void postMessage(RequestContext request) {
+        Profile User = request.profile;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+
+        /* From now on all the commands(so to say) 
+         * will have the same checks/testing for valid json input
+         * only necessary comments will be provided
+         */
+        if (!jsonObject.containsKey("messageContent") || !jsonObject.containsKey("messageSubject")) {
+            String errorMessage = "In order to post a public message you must include messageContent and messageSubject";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        logger.fine("Performing message post operation.");
+
+        String messageContent = jsonObject.getString("messageContent");
+        String messageSubject = jsonObject.getString("messageSubject");
+
+        if (username == null) {
+            String errorMessage = "To post a message the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        //Make the actual message, the board gives it its ID
+        Message message = new Message();
+        message.content = messageContent;
+        message.subject = messageSubject;
+        message.postDate = LocalDate.now().toString();
+        message.sender = username;
+
+        int messageID = messageBoard.addMessage(message);
+        JsonObject affirmJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", username + " successfully posted message " + messageID + " to the message board.")
+                .add("receivedData", jsonObject)
+                .build();
+        /*
+         * Here we need to add a functionality to notify all other users of the new
+         * message, this and the affirm only happen once the message is in the journal
+         */
+        whenDurable(request, TaskDispatcher.PUBLIC_BOARD, messageBoard, message, () -> {
+            messageBoard.messageDurable(message);
+            notifyAllUsers(true, message, message.sender + " posted: " + messageContent);
+            sendJsonResponse(User, affirmJson);
+        });
+    }
+
+    //handles a get Message with message ID request
+    private void getMessage(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //checks as always
+        if (username == null) {
+            String errorMessage = "To get a message the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("messageID")) {
+            String errorMessage = "In order to get a message the key 'messageID' must be included in the request";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //check if the message exists
+        int messageID = jsonObject.getInt("messageID");
+        Message message = new Message();
+        if (messageBoard.tryMessageID(messageID)) {
+            message = messageBoard.getMessage(messageID);
+        } else {
+            String errorMessage = "Message ID does not exist in this message board";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //send the message back
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "message")
+                .add("group", "Public")
+                .add("message-id", message.messageID)
+                .add("sender", message.sender)
+                .add("post-date", message.postDate)
+                .add("message-subject", message.subject)
+                .add("data", message.content)
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    //handles a page of the public history
+    private void getMessages(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+
+        if (username == null) {
+            String errorMessage = "To get messages the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        sendMessagePage(out, jsonObject, messageBoard, "Public");
+    }
+
+    private void getUsers(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //checks as always
+        if (username == null) {
+            String errorMessage = "To get a list of users the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //get all the users
+        String[] users = messageBoard.getAllUsers();
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+
+        // Add each user to the JSON array
+        for (String user : users) {
+            if (user == null) {//check for nulls
+                break;
+            }
+            arrayBuilder.add(user);
+        }
+
+        // Build the response JSON object
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Users")
+                .add("data", arrayBuilder)
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void getGroups(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+
+        //User is requesting groups in which he can join
+        //privateGroups
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+
+        // Add each group to the JSON array
+        for (PrivateMessageBoard pg : privateGroups) {
+            String showcase = "Group Name: " + pg.getGroupName() + " - ID:" + pg.getGroupId();
+            arrayBuilder.add(showcase);
+        }
+
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Groups")
+                .add("data", arrayBuilder)
+                .add("receivedData", jsonObject)
+                .build();
+
+        sendJsonResponse(out, responseJson);
+    }
+
+    //Takes over the session of a connection that dropped, the client is back on the boards and in the groups it was in
+    //without anyone being told, and gets the frames it missed
+    private void resume(RequestContext request) {
+        long sessionId = request.sessionId;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+        SessionResumption resumption = Server.getResumption();
+
+        if (request.username != null) {
+            String errorMessage = "In order to resume a session, you must not have joined with this connection.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!(jsonObject.get("token") instanceof JsonString)) {
+            String errorMessage = "In order to resume a session, you must include key 'token' with the resume-token you were given.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        long previous = resumption == null ? 0 : resumption.claim(jsonObject.getString("token"));
+        Profile old = previous == 0 ? null : Server.getUserProfile(previous);
+        if (old == null || old.getUserName() == null) {
+            String errorMessage = "The session is unknown or its grace period is over, join again.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        String username = old.getUserName();
+        logger.info("[Client " + sessionId + "] Resuming the session of " + username + " from client " + previous + ".");
+
+        //the groups and then the boards' notifications go to this connection from now on, but they wait until the
+        //affirm and the missed frames are out, anything that still reaches the old profile is passed on behind them
+        out.holdFrames();
+        for (int groupID : groupMembership.leaveAll(previous)) {
+            groupMembership.join(sessionId, groupID);
+        }
+        out.setUsername(username);
+        Server.removeUserProfile(previous);
+        ArrayDeque<OutboundFrame> missed = old.handOver(out);
+        int dropped = old.getMissedDropped();
+
+        out.setResumable(true);
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", username + " resumed the session, " + missed.size() + " missed notifications follow.")
+                .add("resume-token", resumption.issue(sessionId))
+                .add("missed", missed.size())
+                .add("receivedData", jsonObject)
+                .build();
+        ArrayDeque<OutboundFrame> replay = new ArrayDeque<>();
+        replay.add(new OutboundFrame(withRequestID(responseJson).toString()));
+        if (dropped > 0) {
+            //only the newest ones were kept
+            replay.add(new OutboundFrame(Json.createObjectBuilder()
+                    .add("type", "ServerNotification")
+                    .add("data-type", "text")
+                    .add("data", dropped + " older notifications were skipped while you were away, use messages to catch up")
+                    .add("skipped", dropped)
+                    .build().toString()));
+        }
+        replay.addAll(missed);
+        out.releaseFrames(replay);
+    }
+
+    //admin only, the server's metrics for someone on the same machine
+    private void stats(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        JsonObject responseJson;
+
+        if (!out.isLocal()) {
+            String errorMessage = "The stats request is only answered for clients on the server's own machine";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "stats")
+                .add("data", ServerMetrics.snapshot(Server.getTaskQueue()))
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void groupJoin(RequestContext request) {
+        long sessionId = request.sessionId;
+        Profile User = request.profile;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //User is to join a group
+        //privateGroups
+
+        //User needs to provide groupID
+        if (!jsonObject.containsKey("groupID")) {
+            String errorMessage = "In order to to join a group, groupID must be provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+
+        if(!(groupID <5 && groupID >=0)){
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        //Handle case upon user not having username yet
+        if (username==null) {
+            String errorMessage = "You must join the public group and have a username prior to joining a private group";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        //add user to group, handle case upon user already being in group
+        if (!privateGroups[groupID].addUser(username)) {
+            String errorMessage = "To join a group you must not already be in the group and have a unique username for that group";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        groupMembership.join(sessionId, groupID);
+
+        //send affirm
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", "User request to join private group successful")
+                .add("receivedData", jsonObject)
+                .build();
+
+        sendJsonResponse(out, responseJson);
+
+        //give him the past two messages from the private group
+        /*
+         * Here we need to add functionality to notify all other users of the new user
+         * We also need to show the new user to that 2 latest messages
+         * We also need to show the new user the list of active users
+         */
+
+        Message blankM = new Message();
+        ArrayList<Integer> pgs = new ArrayList<Integer>();
+        pgs.add(groupID);
+        notifyAllPrivateUsers(pgs, false, blankM, username + " has joined the private message board : ");
+        //change this
+        //notifyAllUsers(false, blankM , username + " has entered the message board");
+        Message[] last2 = privateGroups[groupID].getLast2();
+
+        if(last2[0] != null){
+            // Send message to client
+            JsonObject messageJson1 = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "message")
+            .add("group", privateGroups[groupID].getGroupName())
+            .add("message-id", last2[0].messageID)
+            .add("sender", last2[0].sender)
+            .add("post-date", last2[0].postDate)
+            .add("message-subject", last2[0].subject)
+            .add("data", last2[0].content)
+            .build();
+            sendJsonResponse(User, messageJson1);
+        }
+        if(last2[1]!=null){
+            // Send message to client
+            JsonObject messageJson2 = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "message")
+            .add("group", privateGroups[groupID].getGroupName())
+            .add("message-id", last2[1].messageID)
+            .add("sender", last2[1].sender)
+            .add("post-date", last2[1].postDate)
+            .add("message-subject", last2[1].subject)
+            .add("data", last2[1].content)
+            .build();
+            sendJsonResponse(User, messageJson2);
+        }
+
+        //notify private group client joined of join
+        String[] allUsers = privateGroups[groupID].getAllUsers();
+
+        // Convert String[] to JsonArray using JsonArrayBuilder
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        for (String user : allUsers) {
+            if (user == null) {
+                break;
+            }
+            arrayBuilder.add(user);
+        }
+        //send the information back
+        JsonObject usersJson = Json.createObjectBuilder()
+            .add("type", "ServerNotification")
+            .add("data-type", "list")
+            .add("data-title", "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName() + " Users")
+            .add("data", arrayBuilder.build())
+            .build();
+            sendJsonResponse(User, usersJson);
+    }
+
+    private void groupPostMessage(RequestContext request) {
+        Profile User = request.profile;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+
+        //checks as usual
+        if (!jsonObject.containsKey("messageContent") || !jsonObject.containsKey("messageSubject") || !jsonObject.containsKey("groupID")) {
+            String errorMessage = "In order to post a private group message you must include the groupID, messageContent, and messageSubject";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if(!(groupID <5 && groupID >=0)){
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (username == null){
+            String errorMessage = "In order to post a private group message you must be in the public group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!privateGroups[groupID].getUser(username)){
+            String errorMessage = "In order to post a private group message you must be in the private group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //get the message params
+        String messageContent = jsonObject.getString("messageContent");
+        String messageSubject = jsonObject.getString("messageSubject");
+        Message message = new Message();
+        message.content = messageContent;
+        message.subject = messageSubject;
+        message.postDate = LocalDate.now().toString();
+        message.sender = username;
+
+        //add the message, with the next ID of the private board, and send affirm
+        int messageID = privateGroups[groupID].addMessage(message);
+        JsonObject affirmJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", username + " successfully posted message " + messageID + " to the message board.")
+                .add("receivedData", jsonObject)
+                .build();
+        /*
+         * Here we need to add a functionality to notify all other users of the new
+         * message, this and the affirm only happen once the message is in the journal
+         */
+        ArrayList<Integer> pgs = new ArrayList<Integer>();
+        pgs.add(groupID);//add the group message was posted in
+        whenDurable(request, groupID + 1, privateGroups[groupID], message, () -> {
+            privateGroups[groupID].messageDurable(message);
+            notifyAllPrivateUsers(pgs, true, message, message.sender + " posted: " + messageContent);
+            sendJsonResponse(User, affirmJson);
+        });
+    }
+
+    private void getGroupUsers(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //checks as usual
+        if (username == null) {
+            String errorMessage = "To get a list of private group users the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("groupID")){
+            String errorMessage = "To get a list of private group users the groupID must be provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if(!(groupID <5 && groupID >=0)){
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        String[] users = privateGroups[groupID].getAllUsers();
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+
+        // Add each user to the JSON array
+        for (String user : users) {
+            if (user == null) {
+                break;
+            }
+            arrayBuilder.add(user);
+        }
+
+        // Build the response JSON object
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName() + " Users:")
+                .add("data", arrayBuilder)
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void groupLeave(RequestContext request) {
+        long sessionId = request.sessionId;
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //checks as usual
+        if (username == null) {
+            String errorMessage = "To leave a private group you must first be in the public group and in a private group";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("groupID")){
+            String errorMessage = "To leave a private group the groupID must be provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if(!(groupID <5 && groupID >=0)){
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        if(!privateGroups[groupID].getUser(username)){
+            String errorMessage = "To leave a private group you must be in the private group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        //make the private group int array to pass to the notify all private users function
+        ArrayList<Integer> pgs = new ArrayList<Integer>();
+        pgs.add(groupID);
+        Message blankM = new Message();
+
+        privateGroups[groupID].removeUser(username);
+        groupMembership.leave(sessionId, groupID);
+        notifyAllPrivateUsers(pgs, false, blankM, username + " has left the private: ");
+        // Build the response JSON object
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", "Client request to leave private group successful")
+                .add("receivedData", jsonObject)
+                .build();
+
+        sendJsonResponse(out, responseJson);
+    }
+
+    private void getGroupMessage(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+        JsonObject responseJson;
+
+        //checks as usual
+        if (username == null) {
+            String errorMessage = "To get a list of private group users the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("groupID")||!jsonObject.containsKey("messageID")){
+            String errorMessage = "To get a list of private group users the groupID and messageID must be provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if(!(groupID <5 && groupID >=0)){
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if(!privateGroups[groupID].getUser(username)){
+            String errorMessage = "To get a message from a private group you must be in the private group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        //get the message from the private board and send response
+        int messageID = jsonObject.getInt("messageID");
+
+        Message message = new Message();
+        if (privateGroups[groupID].tryMessageID(messageID)) {
+            message = privateGroups[groupID].getMessage(messageID);
+        } else {
+            String errorMessage = "Message ID does not exist in this message board";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+
+        responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "message")
+                .add("group", "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName())
+                .add("message-id", message.messageID)
+                .add("sender", message.sender)
+                .add("post-date", message.postDate)
+                .add("message-subject", message.subject)
+                .add("data", message.content)
+                .add("receivedData", jsonObject)
+                .build();
+
+        sendJsonResponse(out, responseJson);
+    }
+
+    //handles a search of the public board, or of a private group with a groupID
+    private void search(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+
+        if (username == null) {
+            String errorMessage = "To search the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("groupID")) {
+            sendSearchResults(out, jsonObject, messageBoard, "Public");
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if (!(groupID < 5 && groupID >= 0)) {
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!privateGroups[groupID].getUser(username)) {
+            String errorMessage = "To search a private group you must be in the private group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        sendSearchResults(out, jsonObject, privateGroups[groupID],
+                "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName());
+    }
+
+    //handles a page of a private group's history
+    private void getGroupMessages(RequestContext request) {
+        Profile out = request.profile;
+        JsonObject jsonObject = request.json;
+        String username = request.username;
+
+        if (username == null) {
+            String errorMessage = "To get private group messages the user must be in the public group, try performing the join first";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!jsonObject.containsKey("groupID")) {
+            String errorMessage = "To get private group messages the groupID must be provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        int groupID = jsonObject.getInt("groupID");
+        if (!(groupID < 5 && groupID >= 0)) {
+            String errorMessage = "Invalid groupID provided";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        if (!privateGroups[groupID].getUser(username)) {
+            String errorMessage = "To get messages from a private group you must be in the private group first.";
+            sendErrorJsonResponse(out, jsonObject, errorMessage);
+            return;
+        }
+        sendMessagePage(out, jsonObject, privateGroups[groupID],
+                "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName());
+    }
+
+    //Sends one page of a board's history. The optional "cursor" is a messageID, the page holds the messages posted before it
+    //(the newest ones without a cursor), "pageSize" is optional too. "next-cursor" is left out once there is nothing older
+    private void sendMessagePage(Profile out, JsonObject jsonObject, MessageBoard board, String group) {
+        int before = board.getNextMessageID();
+        int pageSize = CONSTANTS.DEFAULT_PAGE_SIZE;
+        try {
+            if (jsonObject.containsKey("cursor")) {
+                before = jsonObject.getInt("cursor");
+            }
+            if (jsonObject.containsKey("pageSize")) {
+                pageSize = jsonObject.getInt("pageSize");
+            }
+        } catch (ClassCastException e) {
+            sendErrorJsonResponse(out, jsonObject, "The cursor and pageSize must be numbers");
+            return;
+        }
+        if (pageSize < 1 || pageSize > CONSTANTS.MAX_PAGE_SIZE) {
+            sendErrorJsonResponse(out, jsonObject, "The pageSize must be between 1 and " + CONSTANTS.MAX_PAGE_SIZE);
+            return;
+        }
+
+        Message[] page = board.getPage(before, pageSize);
+        JsonObjectBuilder responseBuilder = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "messages")
+                .add("group", group)
+                .add("data", messagesJson(page));
+        //a full page may have older messages behind it
+        if (page.length == pageSize && page[page.length - 1].messageID > 0) {
+            responseBuilder.add("next-cursor", page[page.length - 1].messageID);
+        }
+        sendJsonResponse(out, responseBuilder.add("receivedData", jsonObject).build());
+    }
+
+    //Sends the best matches on a board for the words of the "query", best first, "limit" is optional like pageSize
+    private void sendSearchResults(Profile out, JsonObject jsonObject, MessageBoard board, String group) {
+        if (!(jsonObject.get("query") instanceof JsonString)) {
+            sendErrorJsonResponse(out, jsonObject, "In order to search the key 'query' must be included in the request");
+            return;
+        }
+        int limit = CONSTANTS.DEFAULT_PAGE_SIZE;
+        try {
+            if (jsonObject.containsKey("limit")) {
+                limit = jsonObject.getInt("limit");
+            }
+        } catch (ClassCastException e) {
+            sendErrorJsonResponse(out, jsonObject, "The limit must be a number");
+            return;
+        }
+        if (limit < 1 || limit > CONSTANTS.MAX_PAGE_SIZE) {
+            sendErrorJsonResponse(out, jsonObject, "The limit must be between 1 and " + CONSTANTS.MAX_PAGE_SIZE);
+            return;
+        }
+        Message[] found = board.search(jsonObject.getString("query"), limit);
+        JsonObject responseJson = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "messages")
+                .add("group", group)
+                .add("data", messagesJson(found))
+                .add("receivedData", jsonObject)
+                .build();
+        sendJsonResponse(out, responseJson);
+    }
+
+    //package private for the codec benchmark
+    static JsonArrayBuilder messagesJson(Message[] messages) {
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        for (Message message : messages) {
+            arrayBuilder.add(Json.createObjectBuilder()
+                    .add("message-id", message.messageID)
+                    .add("sender", message.sender)
+                    .add("post-date", message.postDate)
+                    .add("message-subject", message.subject)
+                    .add("data", message.content));
+        }
+        return arrayBuilder;
+    }
+
+    //the notify functions only queue the frames, so a client that is slow to read never holds up the task thread
+    //each notification is built and encoded once, then the same frame is queued for every recipient
+    //they are package private so the fan-out benchmark can call them
+    void notifyAllPrivateUsers(Collection<Integer> whichPrivateGroups, Boolean M, Message message, String notificationMessage){
+        long started = System.nanoTime();
+        int recipients = 0;
+        for(int groupID : whichPrivateGroups){
+            OutboundFrame frame;
+            if(M) //if it is a new message or not
+            {
+                //need notify users in a private group(s) about new message
+                frame = new OutboundFrame(Json.createObjectBuilder()
+                        .add("type", "ServerNotification")
+                        .add("data-type", "message")
+                        .add("group", "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName())
+                        .add("message-id", message.messageID)
+                        .add("message-subject", message.subject)
+                        .add("post-date", message.postDate)
+                        .add("sender", message.sender)
+                        .add("data", message.content)
+                        .build()).notification();
+            }
+            else
+            {
+                //need to notify users in a private group(s) about new notification
+                frame = new OutboundFrame(Json.createObjectBuilder()
+                        .add("type", "ServerNotification")
+                        .add("data-type", "text")
+                        .add("data", notificationMessage + "Private: ID - " + privateGroups[groupID].getGroupId() + " - Name - " + privateGroups[groupID].getGroupName())
+                        .build()).notification();
+            }
+            //only the members of the group are visited
+            for (PrimitiveIterator.OfLong members = groupMembership.getMembers(groupID); members.hasNext(); ) {
+                Profile userProfile = Server.getUserProfile(members.nextLong());
+                if (userProfile != null) {
+                    userProfile.send(frame);
+                    recipients++;
+                }
+            }
+        }
+        ServerMetrics.privateFanOut.recordNanos(System.nanoTime() - started);
+        ServerMetrics.fanOutRecipients.add(recipients);
+    }
+    void notifyAllUsers(Boolean M, Message message, String notificationMessage) {
+        long started = System.nanoTime();
+        int recipients = 0;
+        OutboundFrame frame;
+        if(M) // If it is a new message post or not
+        {
+            frame = new OutboundFrame(Json.createObjectBuilder()
+                    .add("type", "ServerNotification")
+                    .add("data-type", "message")
+                    .add("group", "Public")
+                    .add("message-id", message.messageID)
+                    .add("message-subject", message.subject)
+                    .add("post-date", message.postDate)
+                    .add("sender", message.sender)
+                    .add("data", message.content)
+                    .build()).notification();
+        }
+        else
+        {
+            frame = new OutboundFrame(Json.createObjectBuilder()
+                    .add("type", "ServerNotification")
+                    .add("data-type", "text")
+                    .add("data", notificationMessage)
+                    .build()).notification();
+        }
+        //go through all active users and send them the notification
+        for (Profile userProfile : Server.getActiveUsers().values()) {
+            userProfile.send(frame);
+            recipients++;
+        }
+        ServerMetrics.publicFanOut.recordNanos(System.nanoTime() - started);
+        ServerMetrics.fanOutRecipients.add(recipients);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example;
+
+//benchmark packages
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//json packages
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+//Benchmarks for turning request bytes into json objects, the way a connection decodes them, and for encoding each
+//shape of response into a frame, the way the TaskThread builds them
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private static final String JOIN = "{\"type\":\"clientRequest\",\"action\":\"join\",\"username\":\"user1\"}";
+    private static final String POST = "{\"type\":\"clientRequest\",\"action\":\"postMessage\",\"messageSubject\":\"subject 1\","
+            + "\"messageContent\":\"the content of message 1, a sentence or two like the ones people post on the board\"}";
+    private static final String GET_MESSAGES = "{\"type\":\"clientRequest\",\"action\":\"getMessages\",\"cursor\":1200,\"pageSize\":20}";
+
+    //The bytes of one request as they come off the socket, batch is 20 pipelined posts in one array
+    @State(Scope.Thread)
+    public static class Requests {
+        @Param({"join", "postMessage", "getMessages", "batch"})
+        public String request;
+
+        byte[] bytes;
+        RequestDecoder decoder = new RequestDecoder();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String json;
+            switch (request) {
+                case "join":
+                    json = JOIN;
+                    break;
+                case "postMessage":
+                    json = POST;
+                    break;
+                case "getMessages":
+                    json = GET_MESSAGES;
+                    break;
+                default:
+                    StringBuilder batch = new StringBuilder("[");
+                    for (int i = 0; i < 20; i++) {
+                        batch.append(i == 0 ? "" : ",").append(POST, 0, POST.length() - 1).append(",\"requestID\":").append(i).append('}');
+                    }
+                    json = batch.append(']').toString();
+            }
+            bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private JsonObject received;
+    private Message message;
+    private Message[] page;
+    private String[] users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        received = Json.createReader(new StringReader(POST)).readObject();
+        message = MessageBoardBenchmark.message(1);
+        message.messageID = 1;
+        page = new Message[CONSTANTS.DEFAULT_PAGE_SIZE];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = MessageBoardBenchmark.message(1200 - i);
+            page[i].messageID = 1200 - i;
+        }
+        users = new String[100];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = "user" + i;
+        }
+    }
+
+    @Benchmark
+    public void decode(Requests requests, Blackhole blackhole) {
+        requests.decoder.feed(ByteBuffer.wrap(requests.bytes));
+        requests.decoder.decode(new RequestDecoder.Sink() {
+            @Override
+            public void request(JsonObject request) {
+                blackhole.consume(request);
+            }
+
+            @Override
+            public void invalid(String input) {
+                throw new IllegalStateException(input);
+            }
+        });
+    }
+
+    //the affirm of a post
+    @Benchmark
+    public ByteBuffer[] encodeText() {
+        JsonObject response = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "text")
+                .add("data", "user1 successfully posted message 1 to the message board.")
+                .add("receivedData", received)
+                .build();
+        return new OutboundFrame(response).buffers(OutboundFrame.NEWLINE_FRAMING);
+    }
+
+    //the reply to getUsers
+    @Benchmark
+    public ByteBuffer[] encodeList() {
+        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+        for (String user : users) {
+            arrayBuilder.add(user);
+        }
+        JsonObject response = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "list")
+                .add("data-title", "Users")
+                .add("data", arrayBuilder)
+                .add("receivedData", received)
+                .build();
+        return new OutboundFrame(response).buffers(OutboundFrame.NEWLINE_FRAMING);
+    }
+
+    //the reply to getMessage, and the new message notification is the same shape
+    @Benchmark
+    public ByteBuffer[] encodeMessage() {
+        JsonObject response = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "message")
+                .add("group", "Public")
+                .add("message-id", message.messageID)
+                .add("sender", message.sender)
+                .add("post-date", message.postDate)
+                .add("message-subject", message.subject)
+                .add("data", message.content)
+                .add("receivedData", received)
+                .build();
+        return new OutboundFrame(response).buffers(OutboundFrame.NEWLINE_FRAMING);
+    }
+
+    //a page of getMessages
+    @Benchmark
+    public ByteBuffer[] encodeMessages() {
+        JsonObject response = Json.createObjectBuilder()
+                .add("type", "ServerAffirm")
+                .add("data-type", "messages")
+                .add("group", "Public")
+                .add("data", TaskThread.messagesJson(page))
+                .add("next-cursor", page[page.length - 1].messageID)
+                .add("receivedData", received)
+                .build();
+        return new OutboundFrame(response).buffers(OutboundFrame.LENGTH_FRAMING);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example;
+
+//benchmark packages
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Benchmarks for notifyAllUsers and notifyAllPrivateUsers with N connected clients. The Profiles are real, only their
+//sockets are fake: every client's frames are written to an in-memory sink by the benchmark thread right after the
+//broadcast, the same writeTo a blocking connection's writer does, so each operation is one broadcast to everyone
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+    @Param({"10", "100", "1000"})
+    public int clients;
+
+    private TaskThread taskThread;
+    private Profile[] profiles;
+    private CountingSink sink = new CountingSink();
+    private Message message;
+    private List<Integer> group = Collections.singletonList(0);
+
+    //Class for a socket that is never connected, its streams are in memory
+    static final class FakeSocket extends Socket {
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+
+    //Class for the sink the frames are written to, only counts the bytes
+    static final class CountingSink extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void connect() {
+        PrivateMessageBoard[] privateGroups = {new PrivateMessageBoard(0, "Engineers")};
+        GroupMembership groupMembership = new GroupMembership();
+        //no journal and no dispatcher, the notify functions use neither
+        taskThread = new TaskThread(new LinkedBlockingQueue<>(), new MessageBoard(), privateGroups, groupMembership, null, null);
+        profiles = new Profile[clients];
+        for (int i = 0; i < clients; i++) {
+            //session ids start at 1
+            profiles[i] = new Profile(i + 1, new FakeSocket());
+            profiles[i].setUsername("user" + i);
+            Server.addUserProfile(i + 1, profiles[i]);
+            groupMembership.join(i + 1, 0);
+        }
+        message = MessageBoardBenchmark.message(1);
+        message.messageID = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() {
+        for (int i = 0; i < clients; i++) {
+            Server.removeUserProfile(i + 1);
+        }
+    }
+
+    @Benchmark
+    public long notifyAllUsers() throws IOException {
+        taskThread.notifyAllUsers(true, message, message.sender + " posted: " + message.content);
+        return drain();
+    }
+
+    @Benchmark
+    public long notifyAllPrivateUsers() throws IOException {
+        taskThread.notifyAllPrivateUsers(group, true, message, message.sender + " posted: " + message.content);
+        return drain();
+    }
+
+    //what the clients' writers would do
+    private long drain() throws IOException {
+        for (Profile profile : profiles) {
+            OutboundFrame frame;
+            while ((frame = profile.pollOutbound()) != null) {
+                frame.writeTo(sink, OutboundFrame.NEWLINE_FRAMING);
+            }
+        }
+        return sink.bytes;
+    }
+}
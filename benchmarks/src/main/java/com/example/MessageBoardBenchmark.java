@@ -0,0 +1,139 @@
+package com.example;
+
+//benchmark packages
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Benchmarks for the board operations behind postMessage, getMessage, join and leave, on boards that already hold
+//a realistic number of messages and users. Everything random comes from a fixed seed, so every run (and every
+//commit) measures the same work. The classes are public because the code JMH generates lives in another package
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MessageBoardBenchmark {
+    private static final int SEED = 4065;
+    //lookups are spread over this many precomputed keys
+    private static final int KEYS = 1 << 12;
+
+    //A board that already has the messages, looked up at random
+    @State(Scope.Thread)
+    public static class Messages {
+        @Param({"1000", "100000"})
+        public int messages;
+
+        MessageBoard board;
+        int[] ids = new int[KEYS];
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            board = new MessageBoard();
+            for (int i = 0; i < messages; i++) {
+                Message message = message(i);
+                board.addMessage(message);
+                board.messageDurable(message);
+            }
+            Random random = new Random(SEED);
+            for (int i = 0; i < KEYS; i++) {
+                ids[i] = random.nextInt(messages);
+            }
+        }
+    }
+
+    //A board rebuilt before every iteration, so every iteration adds to a board of the same size
+    @State(Scope.Thread)
+    public static class GrowingBoard {
+        @Param({"1000", "100000"})
+        public int messages;
+
+        MessageBoard board;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void fill() {
+            board = new MessageBoard();
+            for (int i = 0; i < messages; i++) {
+                Message message = message(i);
+                board.addMessage(message);
+                board.messageDurable(message);
+            }
+            next = messages;
+        }
+    }
+
+    //A board with the users on it
+    @State(Scope.Thread)
+    public static class Users {
+        @Param({"100", "10000"})
+        public int users;
+
+        MessageBoard board;
+        String[] names = new String[KEYS];
+        int next;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            board = new MessageBoard();
+            for (int i = 0; i < users; i++) {
+                board.addUser("user" + i);
+            }
+            Random random = new Random(SEED);
+            for (int i = 0; i < KEYS; i++) {
+                names[i] = "user" + random.nextInt(users);
+            }
+        }
+    }
+
+    //the board grows without limit while this runs, so it is timed as batches of posts on a fresh board
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = 10000)
+    @Measurement(iterations = 10, batchSize = 10000)
+    public int addMessage(GrowingBoard state) {
+        return state.board.addMessage(message(state.next++));
+    }
+
+    @Benchmark
+    public Message getMessage(Messages state) {
+        return state.board.getMessage(state.ids[state.next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public boolean getUser(Users state) {
+        return state.board.getUser(state.names[state.next++ & (KEYS - 1)]);
+    }
+
+    //the user is added back afterwards so the board keeps its size, that add is part of the time
+    @Benchmark
+    public boolean removeUser(Users state) {
+        String name = state.names[state.next++ & (KEYS - 1)];
+        state.board.removeUser(name);
+        return state.board.addUser(name);
+    }
+
+    //about the size of a post from the client
+    static Message message(int i) {
+        Message message = new Message();
+        message.sender = "user" + (i % 100);
+        message.postDate = "2024-11-20";
+        message.subject = "subject " + i;
+        message.content = "the content of message " + i + ", a sentence or two like the ones people post on the board";
+        return message;
+    }
+}
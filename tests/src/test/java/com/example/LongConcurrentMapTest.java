@@ -0,0 +1,168 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class LongConcurrentMapTest {
+    private final LongConcurrentMap<String> map = new LongConcurrentMap<>();
+
+    //keys that land in the same segment and start probing at the same slot, so each one is found past the others
+    @Test
+    void collidingKeysAreKeptApart() {
+        long[] keys = colliding(4);
+        for (long key : keys) {
+            assertNull(map.put(key, "v" + key));
+        }
+        for (long key : keys) {
+            assertEquals("v" + key, map.get(key));
+        }
+        assertEquals("v" + keys[1], map.put(keys[1], "replaced"));
+        assertEquals("replaced", map.get(keys[1]));
+
+        //taking out the first of the chain leaves the ones probed past it reachable
+        assertEquals("v" + keys[0], map.remove(keys[0]));
+        assertNull(map.get(keys[0]));
+        assertFalse(map.containsKey(keys[0]));
+        assertEquals("replaced", map.get(keys[1]));
+        assertEquals("v" + keys[2], map.get(keys[2]));
+        assertEquals("v" + keys[3], map.get(keys[3]));
+        assertNull(map.remove(keys[0]));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void growsAndShrinksThroughManyKeys() {
+        for (long key = 1; key <= 10000; key++) {
+            map.put(key, "v" + key);
+        }
+        assertEquals(10000, map.size());
+        for (long key = 1; key <= 10000; key += 2) {
+            assertEquals("v" + key, map.remove(key));
+        }
+        assertEquals(5000, map.size());
+        for (long key = 1; key <= 10000; key++) {
+            assertEquals(key % 2 == 0 ? "v" + key : null, map.get(key));
+        }
+    }
+
+    @Test
+    void computeIfAbsentMakesTheValueOnce() {
+        AtomicInteger made = new AtomicInteger();
+        String first = map.computeIfAbsent(7, key -> "made" + made.incrementAndGet());
+        String second = map.computeIfAbsent(7, key -> "made" + made.incrementAndGet());
+
+        assertEquals("made1", first);
+        assertSame(first, second);
+        assertEquals(1, made.get());
+        assertEquals("made1", map.putIfAbsent(7, "other"));
+    }
+
+    @Test
+    void removeWithAValueOnlyRemovesThatValue() {
+        String value = new String("value");
+        map.put(9, value);
+
+        //an equal but different instance is not the value, the map compares by identity
+        assertFalse(map.remove(9, new String("value")));
+        assertSame(value, map.get(9));
+        assertTrue(map.remove(9, value));
+        assertNull(map.get(9));
+        assertFalse(map.remove(9, value));
+        assertTrue(map.isEmpty());
+    }
+
+    //every walk sees the keys that stay, once each, with their own values, while another thread adds and removes
+    @Test
+    void iteratingWhileAnotherThreadWrites() throws Exception {
+        for (long key = 1; key <= 100; key++) {
+            map.put(key, "v" + key);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Throwable> failures = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long round = 0; !stop.get(); round++) {
+                    long key = 1000 + round % 1000;
+                    if (map.put(key, "v" + key) != null) {
+                        map.remove(key);
+                    }
+                }
+            } catch (Throwable e) {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int walk = 0; walk < 2000; walk++) {
+                Set<Long> seen = new HashSet<>();
+                PrimitiveIterator.OfLong keys = map.keys();
+                while (keys.hasNext()) {
+                    long key = keys.nextLong();
+                    assertTrue(key != 0);
+                    assertTrue(seen.add(key), "key " + key + " seen twice");
+                }
+                for (long key = 1; key <= 100; key++) {
+                    assertTrue(seen.contains(key), "key " + key + " missing");
+                }
+                int stable = 0;
+                for (String value : map.values()) {
+                    assertTrue(value.startsWith("v"));
+                    if (Long.parseLong(value.substring(1)) <= 100) {
+                        stable++;
+                    }
+                }
+                assertEquals(100, stable);
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    void zeroIsNotAKey() {
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "zero"));
+        assertThrows(IllegalArgumentException.class, () -> map.putIfAbsent(0, "zero"));
+        assertThrows(IllegalArgumentException.class, () -> map.computeIfAbsent(0, key -> "zero"));
+        assertNull(map.get(0));
+        assertFalse(map.containsKey(0));
+        assertNull(map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    //the first keys from 1 up whose segment and first slot in a table of 8 are the same, the map's own mixing
+    private static long[] colliding(int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        long target = -1;
+        for (long key = 1; found < count; key++) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+            long place = (h >>> (64 - 5)) << 3 | (h & 7);
+            if (target < 0) {
+                target = place;
+            }
+            if (place == target) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
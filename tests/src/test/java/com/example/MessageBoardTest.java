@@ -0,0 +1,51 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class MessageBoardTest {
+    private final MessageBoard board = new MessageBoard();
+
+    //a post is only served once it is durable
+    @Test
+    void aPendingMessageCannotBeRead() {
+        Message message = message("pending");
+        int id = board.addMessage(message);
+
+        assertNull(board.getMessage(id));
+        assertNull(board.getLast2()[0]);
+        assertEquals(0, board.getPage(board.getNextMessageID(), 10).length);
+        assertEquals(0, board.search("pending", 10).length);
+
+        board.messageDurable(message);
+        assertEquals("pending", board.getMessage(id).content);
+        assertEquals("pending", board.getLast2()[0].content);
+        assertEquals(1, board.getPage(board.getNextMessageID(), 10).length);
+    }
+
+    //a post whose journal write failed is deleted while pending and never shows up, not even once later posts are durable
+    @Test
+    void aFailedPostIsNeverServed() {
+        Message failed = message("failed");
+        board.addMessage(failed);
+        Message next = message("next");
+        board.addMessage(next);
+        board.deleteMessage(failed.messageID);
+        board.messageDurable(next);
+
+        assertNull(board.getMessage(failed.messageID));
+        assertEquals("next", board.getMessage(next.messageID).content);
+        assertEquals(1, board.getPage(board.getNextMessageID(), 10).length);
+    }
+
+    private static Message message(String content) {
+        Message message = new Message();
+        message.sender = "tester";
+        message.postDate = "2024-12-05";
+        message.subject = "subject";
+        message.content = content;
+        return message;
+    }
+}
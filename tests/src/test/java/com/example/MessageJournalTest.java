@@ -0,0 +1,90 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MessageJournalTest {
+    @TempDir
+    Path directory;
+    private Thread commitThread;
+
+    @AfterEach
+    void stopJournal() throws InterruptedException {
+        if (commitThread != null) {
+            commitThread.interrupt();
+            commitThread.join(1000);
+        }
+    }
+
+    @Test
+    void durableMessagesCanBeReadBack() throws Exception {
+        MessageJournal journal = start(new MessageJournal(directory));
+        Message message = message(0, "hello");
+        CountDownLatch durable = new CountDownLatch(1);
+        journal.append(TaskDispatcher.PUBLIC_BOARD, message, durable::countDown, () -> { });
+
+        assertTrue(durable.await(5, TimeUnit.SECONDS));
+        assertEquals("hello", journal.readMessage(message.location).content);
+    }
+
+    //the first segment is /dev/full, so the first write of the commit thread fails with no space left
+    @Test
+    void everyWaiterFailsOnceTheJournalCannotBeWritten() throws Exception {
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.exists(full), "needs /dev/full to make the write fail");
+        Files.createSymbolicLink(directory.resolve(String.format("journal-%010d.log", 1)), full);
+        MessageJournal journal = new MessageJournal(directory);
+
+        //queued before the commit thread runs, so they all fail together with the first batch
+        AtomicInteger durable = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            journal.append(TaskDispatcher.PUBLIC_BOARD, message(i, "lost"), durable::incrementAndGet, failed::countDown);
+        }
+        start(journal);
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        //appends after the failure are refused on the caller's thread, nothing waits for a commit thread that is gone
+        boolean[] refused = new boolean[1];
+        journal.append(TaskDispatcher.PUBLIC_BOARD, message(3, "late"), durable::incrementAndGet, () -> refused[0] = true);
+        assertTrue(refused[0]);
+        assertEquals(0, durable.get());
+
+        //and a snapshot does not hang on the roll
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IOException.class, journal::roll));
+        assertFalse(commitThread.isAlive());
+    }
+
+    private MessageJournal start(MessageJournal journal) {
+        commitThread = new Thread(journal, "journal-test");
+        commitThread.start();
+        return journal;
+    }
+
+    private static Message message(int id, String content) {
+        Message message = new Message();
+        message.messageID = id;
+        message.sender = "tester";
+        message.postDate = "2024-12-05";
+        message.subject = "subject";
+        message.content = content;
+        return message;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PipelinedRequestsTest {
+    @TempDir
+    static Path directory;
+    private static int port;
+
+    //one server for the class, with a worker per board so the requests of a batch could race if they were not chained
+    @BeforeAll
+    static void startServer() throws Exception {
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        Thread server = new Thread(() -> {
+            try {
+                Server.main(new String[] {"--port=" + port, "--workers=6", "--data-dir=" + directory,
+                        "--snapshot-interval=0", "--log-level=WARNING"});
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "test-server");
+        server.setDaemon(true);
+        server.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            try (Socket probe = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    //a batch runs in order for its client, the group requests see the join before them
+    @Test
+    void aBatchOfJoinGroupJoinAndGroupPostIsAffirmedInFull() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                String user = "batcher" + round;
+                send(socket, "[{\"type\":\"clientRequest\",\"action\":\"join\",\"username\":\"" + user + "\",\"requestID\":1},"
+                        + "{\"type\":\"clientRequest\",\"action\":\"groupJoin\",\"groupID\":" + (round % 5) + ",\"requestID\":2},"
+                        + "{\"type\":\"clientRequest\",\"action\":\"groupPostMessage\",\"groupID\":" + (round % 5)
+                        + ",\"messageSubject\":\"s\",\"messageContent\":\"c\",\"requestID\":3}]\n");
+
+                Map<Integer, String> responses = responses(socket, 3);
+                assertEquals(Map.of(1, "ServerAffirm", 2, "ServerAffirm", 3, "ServerAffirm"), responses, "round " + round);
+                send(socket, "{\"type\":\"clientRequest\",\"action\":\"leave\",\"requestID\":4}\n");
+                assertEquals(Map.of(4, "ServerAffirm"), responses(socket, 1));
+            }
+        }
+    }
+
+    private static void send(Socket socket, String json) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    //the type of the response to every requestID, until there are count of them
+    private static Map<Integer, String> responses(Socket socket, int count) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Map<Integer, String> responses = new TreeMap<>();
+        try {
+            while (responses.size() < count) {
+                String line = in.readLine();
+                if (line == null) {
+                    break;
+                }
+                try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                    JsonObject response = reader.readObject();
+                    if (response.containsKey("requestID")) {
+                        responses.put(response.getInt("requestID"), response.getString("type"));
+                    }
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            //what arrived so far is compared
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+class RequestDecoderTest {
+    private final List<String> requests = new ArrayList<>();
+    private final List<String> invalid = new ArrayList<>();
+    private final RequestDecoder decoder = new RequestDecoder();
+
+    @Test
+    void aRequestRightAfterGarbageOnTheSameLineGetsThrough() {
+        feed("hello there{\"action\":\"join\"}\n");
+
+        assertEquals(List.of("hello there"), invalid);
+        assertEquals(List.of("join"), requests);
+    }
+
+    @Test
+    void garbageSplitOverReadsStillEndsAtTheNextRequest() {
+        feed("not ");
+        feed("json [{\"action\":\"a\"},{\"action\":");
+        feed("\"b\"}]");
+
+        assertEquals(List.of("not json "), invalid);
+        assertEquals(List.of("a", "b"), requests);
+    }
+
+    @Test
+    void aNewlineStillEndsGarbage() {
+        feed("oops\n{\"action\":\"join\"}");
+
+        assertEquals(List.of("oops"), invalid);
+        assertEquals(List.of("join"), requests);
+    }
+
+    //the objects nested in a request over the size limit are not taken for requests of their own
+    @Test
+    void theRestOfAnOversizedRequestIsDropped() {
+        StringBuilder big = new StringBuilder("{\"action\":\"big\",\"data\":\"");
+        while (big.length() <= CONSTANTS.MAX_REQUEST_BYTES) {
+            big.append("xxxxxxxxxxxxxxxx");
+        }
+        feed(big.toString());
+        feed("\",\"nested\":{\"action\":\"inner\"}}{\"action\":\"next\"}");
+
+        assertEquals(1, invalid.size());
+        assertEquals(List.of("next"), requests);
+    }
+
+    private void feed(String input) {
+        decoder.feed(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+        decoder.decode(new RequestDecoder.Sink() {
+            @Override
+            public void request(JsonObject request) {
+                requests.add(request.getString("action"));
+            }
+
+            @Override
+            public void invalid(String input) {
+                invalid.add(input);
+            }
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotterTest {
+    @TempDir
+    Path directory;
+    private Thread commitThread;
+    private MessageJournal journal;
+    private MessageBoard board;
+    private PrivateMessageBoard[] groups;
+
+    @AfterEach
+    void stopJournal() throws InterruptedException {
+        stop();
+    }
+
+    @Test
+    void aSnapshotOnlyCopiesWhatWasPostedSinceTheLastOne() throws Exception {
+        start();
+        post(0, 100);
+        Snapshotter snapshotter = new Snapshotter(journal, board, groups, 0);
+        assertTrue(snapshotter.snapshot());
+        post(100, 50);
+        assertTrue(snapshotter.snapshot());
+
+        //both snapshots went into the same snapshot file, and every covered segment is gone
+        assertEquals(1, count("snapshot-*.snap"));
+        assertEquals(1, count("journal-*.log"));
+        for (int id = 0; id < 150; id++) {
+            assertFalse(journal.inSegment(board.getMessage(id).location));
+            assertEquals("content " + id, board.getMessage(id).content);
+        }
+    }
+
+    @Test
+    void aRestartLoadsTheSnapshotsAndTheJournalTail() throws Exception {
+        start();
+        post(0, 100);
+        Snapshotter snapshotter = new Snapshotter(journal, board, groups, 0);
+        assertTrue(snapshotter.snapshot());
+        post(100, 50);
+        assertTrue(snapshotter.snapshot());
+        post(150, 25);//only in the journal
+        stop();
+
+        start();
+        assertEquals(175, board.getNextMessageID());
+        for (int id = 0; id < 175; id++) {
+            assertEquals("content " + id, board.getMessage(id).content);
+        }
+    }
+
+    //a covered message that cannot be read back makes the snapshot give up, the segment it is in stays
+    @Test
+    void anUnreadableMessageKeepsTheJournal() throws Exception {
+        start();
+        post(0, CONSTANTS.HOT_MESSAGES + 10);//the oldest ones are cold, their bodies are only in the segment
+        Path segment = directory.resolve(String.format("journal-%010d.log", 1));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+
+        assertFalse(new Snapshotter(journal, board, groups, 0).snapshot());
+        assertEquals(0, count("snapshot-*.snap"));
+        assertFalse(Files.exists(directory.resolve("checkpoint")));
+        assertTrue(Files.exists(segment));
+    }
+
+    private void start() throws IOException {
+        journal = new MessageJournal(directory);
+        board = new MessageBoard();
+        board.setBodySource(journal);
+        groups = new PrivateMessageBoard[0];
+        journal.replay((boardKey, message) -> board.restoreMessage(message));
+        commitThread = new Thread(journal, "journal-test");
+        commitThread.start();
+    }
+
+    private void stop() throws InterruptedException {
+        if (commitThread != null) {
+            commitThread.interrupt();
+            commitThread.join(1000);
+            commitThread = null;
+        }
+    }
+
+    //posts like the task thread does, and waits until they are durable
+    private void post(int first, int count) throws InterruptedException {
+        CountDownLatch durable = new CountDownLatch(count);
+        for (int i = first; i < first + count; i++) {
+            Message message = new Message();
+            message.sender = "tester";
+            message.postDate = "2024-12-05";
+            message.subject = "subject " + i;
+            message.content = "content " + i;
+            board.addMessage(message);
+            journal.append(TaskDispatcher.PUBLIC_BOARD, message, () -> {
+                board.messageDurable(message);
+                durable.countDown();
+            }, () -> { });
+        }
+        assertTrue(durable.await(5, TimeUnit.SECONDS));
+    }
+
+    private long count(String pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            String regex = pattern.replace(".", "\\.").replace("*", ".*");
+            return files.filter(file -> file.getFileName().toString().matches(regex)).count();
+        }
+    }
+}